@@ -0,0 +1,30 @@
+package com.soham;
+
+/**
+ * This class builds the chains the benchmarks run against.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+final class BenchmarkChains {
+
+    private BenchmarkChains() {
+    }
+
+    /**
+     * Builds a valid chain, mined on the calling thread.
+     * @param size number of blocks, including the genesis block.
+     * @param difficulty difficulty of every block.
+     * @return BlockChain - the chain, fully validated once.
+     */
+    static BlockChain build(int size, int difficulty) {
+        BlockChain chain = new BlockChain();
+        for (int i = 0; i < size; i++) {
+            chain.addBlock(new Block(i, chain.getTime(), "transaction " + i, difficulty));
+        }
+        if (!chain.isChainValid()) {
+            throw new IllegalStateException("Benchmark chain is not valid !!");
+        }
+        return chain;
+    }
+}
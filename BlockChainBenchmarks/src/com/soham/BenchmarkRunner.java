@@ -0,0 +1,34 @@
+package com.soham;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * This class runs the benchmarks with the gc profiler, so every result comes with its
+ * allocation rate (gc.alloc.rate.norm is bytes per operation), and writes them to
+ * benchmarks.json for comparing runs.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Main method.
+     * @param args optional regular expression of the benchmarks to run, all by default.
+     * @throws RunnerException if a benchmark fails.
+     */
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "com\\.soham\\..*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("benchmarks.json")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,66 @@
+package com.soham;
+
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class benchmarks hashing a single block, the inner step of mining and validation.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+
+    // a typical block, linked to a parent like every block but the genesis block.
+    private Block block;
+
+    // the same block with a single hasher, as the miners use it.
+    private BlockHasher hasher;
+
+    /**
+     * Builds the block to hash.
+     */
+    @Setup
+    public void setUp() {
+        block = new Block(1, new Timestamp(System.currentTimeMillis()), "alice pays bob 10 coins", 3);
+        block.setPreviousHash(new Block(0, block.getTimestamp(), "", 3).calculateHash());
+        block.setNonce(123_456_789L);
+        hasher = new BlockHasher(block);
+    }
+
+    /**
+     * Full hash of the block, header encoding included.
+     * @return String - the hash, returned so it is not optimized away.
+     */
+    @Benchmark
+    public String calculateHash() {
+        return block.calculateHash();
+    }
+
+    /**
+     * One mining attempt: next nonce, digest, no hex encoding.
+     * @return byte[] - the raw hash.
+     */
+    @Benchmark
+    public byte[] miningAttempt() {
+        hasher.addToNonce(1);
+        return hasher.digest();
+    }
+}
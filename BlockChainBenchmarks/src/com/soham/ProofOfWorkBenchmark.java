@@ -0,0 +1,65 @@
+package com.soham;
+
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class benchmarks mining one block at difficulties 3 to 5. Each invocation mines
+ * a block with different data, so the time averages over many nonce searches instead
+ * of repeating a lucky or unlucky one. Difficulties 1 and 2 take 16 and 256 hashes,
+ * a few microseconds, which per invocation setup and timing would dominate.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProofOfWorkBenchmark {
+
+    // number of leading zero hex digits.
+    @Param({"3", "4", "5"})
+    private int difficulty;
+
+    // counts the blocks mined, to vary their data.
+    private long mined;
+
+    // the block mined by the next invocation.
+    private Block block;
+
+    /**
+     * Builds a fresh block, a mined block would meet its target on the first attempt.
+     * Setting up per invocation is fine here, at difficulty 3 and up mining takes
+     * milliseconds, far longer than the setup.
+     */
+    @Setup(Level.Invocation)
+    public void newBlock() {
+        block = new Block(1, new Timestamp(System.currentTimeMillis()), "transaction " + mined++, difficulty);
+        block.setPreviousHash("0000000000000000000000000000000000000000000000000000000000000000");
+    }
+
+    /**
+     * Sequential proof of work.
+     * @return String - the winning hash.
+     */
+    @Benchmark
+    public String proofOfWork() {
+        return block.proofOfWork();
+    }
+}
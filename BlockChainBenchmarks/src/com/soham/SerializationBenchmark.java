@@ -0,0 +1,95 @@
+package com.soham;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class benchmarks serializing the chain: the JSON string of toString, the same
+ * document streamed by ChainExporter, and single blocks as JSON and in the binary codec.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class SerializationBenchmark {
+
+    // number of blocks in the chain.
+    @Param({"1000", "100000"})
+    private int size;
+
+    private BlockChain chain;
+
+    // a block from the middle of the chain.
+    private Block block;
+
+    // reused buffer for the binary codec.
+    private ByteBuffer buffer;
+
+    /**
+     * Builds the chain once per trial.
+     */
+    @Setup(Level.Trial)
+    public void buildChain() {
+        chain = BenchmarkChains.build(size, 1);
+        block = chain.getBlock(size / 2);
+        buffer = ByteBuffer.allocate(BlockCodec.encodedLength(block));
+    }
+
+    /**
+     * The whole chain document built as one string.
+     * @return String - the document.
+     */
+    @Benchmark
+    public String chainToString() {
+        return chain.toString();
+    }
+
+    /**
+     * The whole chain document streamed to a writer that drops it.
+     * @throws IOException never, the writer drops everything.
+     */
+    @Benchmark
+    public void chainWriteJson() throws IOException {
+        ChainExporter.writeJson(chain, Writer.nullWriter());
+    }
+
+    /**
+     * One block as JSON.
+     * @return String - the block's JSON.
+     */
+    @Benchmark
+    public String blockToString() {
+        return block.toString();
+    }
+
+    /**
+     * One block in the binary codec.
+     * @return ByteBuffer - the encoded block.
+     */
+    @Benchmark
+    public ByteBuffer blockEncode() {
+        buffer.clear();
+        BlockCodec.encode(block, buffer);
+        return buffer;
+    }
+}
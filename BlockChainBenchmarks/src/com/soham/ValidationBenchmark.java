@@ -0,0 +1,149 @@
+package com.soham;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class benchmarks isChainValid and repairChain on chains of 1k, 100k and 1M blocks.
+ * Every block has difficulty 1 so building the chains stays quick, validation and
+ * repair do the same work per block at any difficulty except for re-mining.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class ValidationBenchmark {
+
+    // difficulty of every block.
+    private static final int DIFFICULTY = 1;
+
+    // number of blocks in the chain.
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    // the chain, valid before every invocation.
+    private BlockChain chain;
+
+    /**
+     * Builds the chain once per trial.
+     */
+    @Setup(Level.Trial)
+    public void buildChain() {
+        chain = BenchmarkChains.build(size, DIFFICULTY);
+    }
+
+    /**
+     * A chain whose every block lost its cached hash, as after opening a store.
+     */
+    @State(Scope.Benchmark)
+    public static class DirtyChain {
+
+        private BlockChain chain;
+
+        /**
+         * Builds the chain once per trial.
+         * @param benchmark the benchmark, for the chain size.
+         */
+        @Setup(Level.Trial)
+        public void buildChain(ValidationBenchmark benchmark) {
+            chain = BenchmarkChains.build(benchmark.size, DIFFICULTY);
+        }
+
+        /**
+         * Drops every cached hash by setting each nonce to its own value.
+         */
+        @Setup(Level.Invocation)
+        public void dropHashes() {
+            for (int i = 0; i < chain.getChainSize(); i++) {
+                Block block = chain.getBlock(i);
+                block.setNonce(block.getNonce());
+            }
+        }
+    }
+
+    /**
+     * A chain with one block tampered with in its middle.
+     */
+    @State(Scope.Benchmark)
+    public static class TamperedChain {
+
+        private BlockChain chain;
+
+        // counts the tampering, to vary the data.
+        private long tampered;
+
+        /**
+         * Builds the chain once per trial.
+         * @param benchmark the benchmark, for the chain size.
+         */
+        @Setup(Level.Trial)
+        public void buildChain(ValidationBenchmark benchmark) {
+            chain = BenchmarkChains.build(benchmark.size, DIFFICULTY);
+        }
+
+        /**
+         * Changes the data of the middle block, the previous repair left the chain valid.
+         */
+        @Setup(Level.Invocation)
+        public void tamper() {
+            chain.getBlock(chain.getChainSize() / 2).setData("tampered " + tampered++);
+        }
+    }
+
+    /**
+     * Validation from the genesis block with every hash cached, the links and targets
+     * of every block are checked.
+     * @return boolean - the result.
+     */
+    @Benchmark
+    public boolean isChainValidFromGenesis() {
+        chain.invalidateFrom(0);
+        return chain.isChainValid();
+    }
+
+    /**
+     * Validation of an already validated chain, only the watermark is checked.
+     * @return boolean - the result.
+     */
+    @Benchmark
+    public boolean isChainValidIncremental() {
+        return chain.isChainValid();
+    }
+
+    /**
+     * Validation hashing every block again.
+     * @param dirty the chain without cached hashes.
+     * @return boolean - the result.
+     */
+    @Benchmark
+    public boolean isChainValidRehashing(DirtyChain dirty) {
+        return dirty.chain.isChainValid();
+    }
+
+    /**
+     * Repair of the second half of the chain after its middle block was tampered with.
+     * @param tampered the tampered chain.
+     * @return RepairReport - the report.
+     */
+    @Benchmark
+    public RepairReport repairChain(TamperedChain tampered) {
+        return tampered.chain.repairChain();
+    }
+}
@@ -1,11 +1,10 @@
 package com.soham;
 
 import java.math.BigInteger;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.sql.Timestamp;
-import java.util.StringJoiner;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.json.JSONObject;
 
@@ -18,7 +17,7 @@ import org.json.JSONObject;
 public class Block {
 
     // the default nonce value.
-    private static final String DEFAULT_NONCE = "1";
+    private static final long DEFAULT_NONCE = 1L;
 
     // the position of the block on the chain.
     private int index;
@@ -26,23 +25,47 @@ public class Block {
     //  it is an int that specifies the exact number of left most hex digits needed by a proper hash.
     private int difficulty;
 
+    // the target a good hash must meet, by default difficulty leading zero hex digits.
+    private Target target;
+
     // a Java Timestamp object.
     private Timestamp timestamp;
 
-    // a String holding the block's single transaction details.
+    // a String holding the block's single transaction details, or the Merkle root of a batch.
     private String data;
 
+    // the transactions of a batched block, null for a single transaction block.
+    private List<String> transactions;
+
+    // Merkle root of the transactions, null for a single transaction block.
+    private String merkleRoot;
+
     // the SHA256 hash of a block's parent.
     private String previousHash;
 
-    // a BigInteger value determined by a proof of work routine.
-    private BigInteger nonce;
+    // a value determined by a proof of work routine, kept as a primitive long.
+    private long nonce;
 
-    /**
-     * SHA-256 Holder.
-     */
-    private static final String SHA_256 = "SHA-256";
+    // the nonce once it no longer fits in a long, null until then.
+    private BigInteger bigNonce;
+
+
+    // hash of the current fields, null when a setter made it dirty.
+    // setters and the slow path of getHash lock the block so a stale hash is never cached.
+    private volatile String hash;
+
+    // the chain holding this block, told about changes so it can verify the block again.
+    private BlockChain chain;
 
+    // position of this block in the chain.
+    private int position;
+
+    // set once a checkpoint covers the block, its fields can no longer change.
+    private boolean sealed;
+
+    // set once the payload (data, transactions and Merkle root) is dropped from memory,
+    // it is read back from the chain's store when there is one.
+    private boolean pruned;
 
     /**
      * Constructor.
@@ -56,59 +79,167 @@ public class Block {
         this.timestamp = timestamp;
         this.data = data;
         this.difficulty = difficulty;
-        this.nonce = new BigInteger(DEFAULT_NONCE);
+        this.target = Target.ofHexDigits(difficulty);
+        this.nonce = DEFAULT_NONCE;
         this.previousHash = "0";
     }
 
     /**
-     * Converts given hash to hex.
-     * https://www.baeldung.com/sha-256-hashing-java
-     *
-     * @param hash to convert.
-     * @return string - converted to hex format.
+     * Constructor of a block holding a batch of transactions. The block's data is
+     * the Merkle root of the batch, so the hash commits to every transaction.
+     * @param index
+     * @param timestamp
+     * @param transactions
+     * @param difficulty
      */
-    private static String convertToHex(byte[] hash) {
-        StringBuffer hexString = new StringBuffer();
-        for (int i = 0; i < hash.length; i++) {
-            String hex = Integer.toHexString(0xff & hash[i]);
-            if(hex.length() == 1) {
-                hexString.append('0');
-            }
-            hexString.append(hex);
+    Block(int index, Timestamp timestamp, List<String> transactions, int difficulty) {
+        this(index, timestamp, new MerkleTree(transactions).getRoot(), difficulty);
+        this.transactions = Collections.unmodifiableList(new ArrayList<>(transactions));
+        this.merkleRoot = this.data;
+    }
+
+    /**
+     * Links the block to the chain it was added to.
+     * @param chain the chain holding the block.
+     * @param position position of the block in the chain.
+     */
+    void attach(BlockChain chain, int position) {
+        this.chain = chain;
+        this.position = position;
+    }
+
+    /**
+     * Returns an unattached copy of this block with the same fields and hash, so a
+     * repair can mine the copy while readers keep seeing this block.
+     * @return Block - the copy.
+     */
+    synchronized Block copy() {
+        Block copy = new Block(index, (Timestamp) timestamp.clone(), data, difficulty);
+        copy.target = target;
+        copy.transactions = transactions;
+        copy.merkleRoot = merkleRoot;
+        copy.previousHash = previousHash;
+        copy.nonce = nonce;
+        copy.bigNonce = bigNonce;
+        copy.hash = hash;
+        return copy;
+    }
+
+    /**
+     * Returns a sealed copy of this block, with the same fields and hash.
+     * @return Block - the copy, unattached.
+     */
+    synchronized Block seal() {
+        Block sealedCopy = copy();
+        sealedCopy.hash = getHash();
+        sealedCopy.sealed = true;
+        return sealedCopy;
+    }
+
+    /**
+     * Returns a sealed copy of this block holding only its header and hash.
+     * @return Block - the header, unattached.
+     */
+    synchronized Block header() {
+        Block header = seal();
+        header.data = null;
+        header.transactions = null;
+        header.merkleRoot = null;
+        header.pruned = true;
+        return header;
+    }
+
+    /**
+     * Whether the payload of this block was dropped from memory.
+     * @return boolean - true for a header only block.
+     */
+    boolean isPruned() {
+        return pruned;
+    }
+
+    /**
+     * Whether the payload of this block can be read, from memory or from the chain's store.
+     * @return boolean - false if the payload was dropped and there is no store to read it from.
+     */
+    boolean hasPayload() {
+        return !pruned || (chain != null && chain.getStore() != null);
+    }
+
+    /**
+     * Reads the dropped payload of a header only block back from the chain's store.
+     * @return Block - the full block, null if the payload is gone.
+     */
+    private Block archived() {
+        return chain == null ? null : chain.readArchived(position);
+    }
+
+    /**
+     * Refuses to change a block covered by a checkpoint.
+     */
+    private void checkNotSealed() {
+        if (sealed) {
+            throw new IllegalStateException("Block " + index + " is covered by a checkpoint !!");
+        }
+    }
+
+    /**
+     * Marks the cached hash dirty and tells the chain that an input of the hash changed.
+     */
+    private void changed() {
+        hash = null;
+        if (chain != null) {
+            chain.invalidateFrom(position);
         }
-        return hexString.toString();
     }
 
     /**
      * This method computes a hash of the concatenation of the index, timestamp,
-     * data, previousHash, nonce, and difficulty.
+     * data, previousHash, nonce, and difficulty, followed by the exact target when it
+     * is finer than whole hex digits.
      * @return String - hex format of SHA265 hash.
      */
     public String calculateHash() {
-        StringJoiner strHashToCalculate = new StringJoiner("");
-        // create the concatenated string, StringJoiner is efficient than '+'
-        strHashToCalculate.add(Integer.toString(index))
-                .add(timestamp.toString())
-                .add(data)
-                .add(previousHash)
-                .add(nonce.toString())
-                .add(Integer.toString(difficulty));
-
-        String hexEncodedBytes = "";
-        String concatString = strHashToCalculate.toString();
-        try {
-            MessageDigest digest = MessageDigest.getInstance(SHA_256);
-            byte[] encodedHashData = digest.digest(
-                    concatString.getBytes(StandardCharsets.UTF_8));
-            // making sure it's positive
-            // https://stackoverflow.com/questions/6357234/sha-hash-function-gives-a-negative-output
-            // BigInteger bigInteger = new BigInteger(1, encodedHashData);
-            // encode the bytes into hex format.
-            hexEncodedBytes = convertToHex(encodedHashData);
-        } catch (NoSuchAlgorithmException nsa) {
-            System.out.println("No such algorithm exception thrown " + nsa);
+        if (pruned) {
+            // the payload the hash covers is no longer here, the checkpoint vouches for the hash.
+            return hash;
         }
-        return hexEncodedBytes;
+        return new BlockHasher(this).digestHex();
+    }
+
+    /**
+     * Returns the hash of this block, only computed again when a setter changed
+     * one of its inputs since the last time.
+     * @return String - hex format of SHA265 hash.
+     */
+    String getHash() {
+        String cached = hash;
+        if (cached != null) {
+            return cached;
+        }
+        synchronized (this) {
+            cached = hash;
+            if (cached == null) {
+                cached = calculateHash();
+                hash = cached;
+            }
+            return cached;
+        }
+    }
+
+    /**
+     * Whether the cached hash must be computed again.
+     * @return boolean - true if a setter changed the block since its hash was known.
+     */
+    boolean isDirty() {
+        return hash == null;
+    }
+
+    /**
+     * Records the hash a miner found for the current fields.
+     * @param minedHash hex hash of the block with its current nonce.
+     */
+    synchronized void recordHash(String minedHash) {
+        this.hash = minedHash;
     }
 
 
@@ -118,19 +249,67 @@ public class Block {
      * @return String - Hex SHA256 hash with correct difficulty level.
      */
     public String proofOfWork() {
-        // Adds the correct amount of zeros to String depending on difficulty.
-        String leadingHexZeros = "0".repeat(difficulty);
-        // Loop executes till the hash has the same number of leading zeroes as difficulty.
+        return proofOfWork(null);
+    }
+
+    /**
+     * Proof of work that also counts the hashes it tries.
+     * @param metrics where to add the hashes, in batches, null to not count them.
+     * @return String - Hex SHA256 hash with correct difficulty level.
+     */
+    String proofOfWork(ChainMetrics metrics) {
+        return proofOfWork(metrics, Long.MAX_VALUE);
+    }
+
+    /**
+     * Proof of work that counts the hashes it tries and gives up after a time limit.
+     * @param metrics where to add the hashes, in batches, null to not count them.
+     * @param timeoutNanos the maximum time to mine, checked every HASH_FLUSH_INTERVAL attempts.
+     * @return String - Hex SHA256 hash with correct difficulty level, null if no good
+     * hash was found in time, the nonce is then left untouched.
+     */
+    String proofOfWork(ChainMetrics metrics, long timeoutNanos) {
+        long startNanos = System.nanoTime();
+        // the header is encoded once, only the nonce digits change between attempts.
+        BlockHasher hasher = new BlockHasher(this);
+        // the nonce value is tracked as a long, BigInteger only past Long.MAX_VALUE.
+        long candidate = nonce;
+        boolean overflowed = bigNonce != null;
+        // hashes tried since they were last added to the metrics.
+        int unflushed = 0;
+        // Loop executes till the raw hash meets the target, hex is only built for the winner.
         while (true) {
-            String generatedHash = calculateHash();
-            String leadingZerosInGeneratedHash = generatedHash.substring(0, difficulty);
-            if (leadingHexZeros.equals(leadingZerosInGeneratedHash)) {
+            byte[] generatedHash = hasher.digest();
+            if (++unflushed == ChainMetrics.HASH_FLUSH_INTERVAL) {
+                if (metrics != null) {
+                    metrics.addHashes(unflushed);
+                }
+                unflushed = 0;
+                if (System.nanoTime() - startNanos >= timeoutNanos) {
+                    return null;
+                }
+            }
+            if (target.isMetBy(generatedHash)) {
+                if (metrics != null) {
+                    metrics.addHashes(unflushed);
+                }
                 // difficulty match found, great job !!
-                return generatedHash;
+                if (overflowed) {
+                    setNonce(hasher.getNonce());
+                } else {
+                    setNonce(candidate);
+                }
+                hash = BlockHasher.toHex(generatedHash);
+                return hash;
             } else {
                 // If difficulty is not matched.
                 // Increase nonce by 1 and try again.
-                nonce = nonce.add(new BigInteger("1"));
+                hasher.addToNonce(1);
+                if (candidate == Long.MAX_VALUE) {
+                    overflowed = true;
+                } else {
+                    candidate++;
+                }
             }
         }
     }
@@ -141,9 +320,51 @@ public class Block {
      * @return
      */
     public BigInteger getNonce() {
+        return bigNonce != null ? bigNonce : BigInteger.valueOf(nonce);
+    }
+
+    /**
+     * Whether the nonce still fits in a long.
+     * @return boolean - true until the nonce passes Long.MAX_VALUE.
+     */
+    boolean hasLongNonce() {
+        return bigNonce == null;
+    }
+
+    /**
+     * getter for the nonce as a long, only meaningful while {@link #hasLongNonce()}.
+     * @return
+     */
+    long getLongNonce() {
         return nonce;
     }
 
+    /**
+     * setter for the nonce field, used by miners once a good nonce is found.
+     * @param nonce
+     */
+    synchronized void setNonce(long nonce) {
+        checkNotSealed();
+        this.nonce = nonce;
+        this.bigNonce = null;
+        changed();
+    }
+
+    /**
+     * setter for the nonce field, falls back to a BigInteger past Long.MAX_VALUE.
+     * @param nonce
+     */
+    synchronized void setNonce(BigInteger nonce) {
+        checkNotSealed();
+        if (nonce.bitLength() < Long.SIZE) {
+            setNonce(nonce.longValue());
+        } else {
+            this.nonce = Long.MAX_VALUE;
+            this.bigNonce = nonce;
+            changed();
+        }
+    }
+
     /**
      * getter for the difficulty field.
      * @return
@@ -156,8 +377,31 @@ public class Block {
      * setter for difficulty field.
      * @param difficulty
      */
-    public void setDifficulty(int difficulty) {
+    public synchronized void setDifficulty(int difficulty) {
+        checkNotSealed();
         this.difficulty = difficulty;
+        this.target = Target.ofHexDigits(difficulty);
+        changed();
+    }
+
+    /**
+     * getter for the target field.
+     * @return
+     */
+    Target getTarget() {
+        return target;
+    }
+
+    /**
+     * setter for the target field, also sets difficulty to the whole hex digits
+     * of the target; the hash commits to both.
+     * @param target
+     */
+    synchronized void setTarget(Target target) {
+        checkNotSealed();
+        this.target = target;
+        this.difficulty = target.getHexDigits();
+        changed();
     }
 
     /**
@@ -172,8 +416,10 @@ public class Block {
      * setter for previous hash field.
      * @param previousHash
      */
-    public void setPreviousHash(String previousHash) {
+    public synchronized void setPreviousHash(String previousHash) {
+        checkNotSealed();
         this.previousHash = previousHash;
+        changed();
     }
 
     /**
@@ -188,8 +434,10 @@ public class Block {
      * setter for index field.
      * @param index
      */
-    public void setIndex(int index) {
+    public synchronized void setIndex(int index) {
+        checkNotSealed();
         this.index = index;
+        changed();
     }
 
     /**
@@ -204,15 +452,21 @@ public class Block {
      * setter for timestamp field.
      * @param timestamp
      */
-    public void setTimestamp(Timestamp timestamp) {
+    public synchronized void setTimestamp(Timestamp timestamp) {
+        checkNotSealed();
         this.timestamp = timestamp;
+        changed();
     }
 
     /**
-     * getter for data field.
+     * getter for data field, read from the store for a header only block.
      * @return
      */
     public String getData() {
+        if (pruned) {
+            Block full = archived();
+            return full == null ? null : full.data;
+        }
         return data;
     }
 
@@ -220,8 +474,56 @@ public class Block {
      * set the data field.
      * @param data
      */
-    public void setData(String data) {
+    public synchronized void setData(String data) {
+        checkNotSealed();
         this.data = data;
+        changed();
+    }
+
+    /**
+     * getter for the transactions of a batched block.
+     * @return List - the transactions, null for a single transaction block.
+     */
+    public List<String> getTransactions() {
+        if (pruned) {
+            Block full = archived();
+            return full == null ? null : full.transactions;
+        }
+        return transactions;
+    }
+
+    /**
+     * Checks that a batched block still carries the Merkle root of its transactions.
+     * @return boolean - false if the data no longer matches the batch.
+     */
+    boolean hasValidMerkleRoot() {
+        // a header only block was checked before it was pruned.
+        return pruned || merkleRoot == null || merkleRoot.equals(data);
+    }
+
+    /**
+     * getter for the Merkle root of a batched block.
+     * @return String - the root, null for a single transaction block.
+     */
+    String getMerkleRoot() {
+        if (pruned) {
+            Block full = archived();
+            return full == null ? null : full.merkleRoot;
+        }
+        return merkleRoot;
+    }
+
+    /**
+     * Returns the proof that a transaction of this batch is committed to by the block.
+     * @param position position of the transaction in the batch.
+     * @return List - hex sibling hashes, checked with {@link MerkleTree#verifyProof}.
+     */
+    public List<String> getInclusionProof(int position) {
+        List<String> batch = getTransactions();
+        if (batch == null) {
+            throw new IllegalStateException("Block " + index + " does not hold a batch !!");
+        }
+        return new MerkleTree(batch).getProof(position);
     }
 
     /**
@@ -233,10 +535,14 @@ public class Block {
         JSONObject json = new JSONObject();
         json.put("index", index);
         json.put("time stamp", timestamp);
-        json.put("data", data);
+        json.put("data", getData());
         json.put("previous hash", previousHash);
-        json.put("nonce", nonce);
+        json.put("nonce", getNonce());
         json.put("difficulty", difficulty);
+        List<String> batch = getTransactions();
+        if (batch != null) {
+            json.put("transactions", batch);
+        }
         return json.toString();
     }
 }
@@ -1,18 +1,34 @@
 package com.soham;
 
-import org.json.JSONObject;
-
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.PrivateKey;
+import java.security.PublicKey;
 import java.sql.Timestamp;
-import java.time.Instant;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 /**
  * This class represents a simple BlockChain.
@@ -20,26 +36,157 @@ import java.util.StringJoiner;
  * author soham chakraborti
  * andrewId: sohamc
  */
-public class BlockChain {
+public class BlockChain implements Closeable {
 
-    /**
-     * SHA-256 Holder.
-     */
-    private static final String SHA_256 = "SHA-256";
+    private static final Logger LOGGER = Logger.getLogger(BlockChain.class.getName());
+
+    // what the menu takes as a difficulty to let the retargeter pick the target.
+    private static final String AUTO_DIFFICULTY = "auto";
+
+    // mining time the retargeter aims at for blocks added from the menu.
+    private static final long BLOCK_INTERVAL_MILLIS = 500;
+
+    // number of recent blocks the retargeter measures the hash rate over.
+    private static final int RETARGET_WINDOW = 16;
+
+    // how long a node started with peers waits for their chain before creating a genesis block.
+    private static final long PEER_SYNC_WAIT_MILLIS = 10_000;
+
+    // number of blocks the menu can have waiting to be mined.
+    private static final int PIPELINE_CAPACITY = 16;
+
+    // how long a stopping HTTP server waits for the block being mined to be given up.
+    private static final long SHUTDOWN_WAIT_MILLIS = 5_000;
+
+    // below this many blocks to check, validation stays on the calling thread.
+    static final int PARALLEL_VALIDATION_THRESHOLD = 4096;
+
+    // the menu's one reader of standard input, a reader per prompt would lose the lines it buffered.
+    private static final BufferedReader STDIN = new BufferedReader(new InputStreamReader(System.in));
+
+    // append-only list of fully mined blocks, read without locks.
+    private final BlockList blocks;
+
+    // size, hash and latest block, replaced as a whole after each block is mined.
+    private volatile ChainSnapshot tip;
+
+    // blocks by hash and by time stamp, kept up to date by the writer.
+    private final BlockIndex index = new BlockIndex();
+
+    // the verified prefix, moved back whenever a block changes.
+    private final AtomicReference<Watermark> watermark;
+
+    // appends and repairs run one at a time, reads never take this lock.
+    private final Object writeLock = new Object();
+
+    // whether long validations hash the blocks on all cores.
+    private volatile boolean parallelValidation;
+
+    // optional on-disk store every mined block is appended to.
+    private volatile BlockStore store;
+
+    // optional multi-threaded miner, blocks are mined on the calling thread when not set.
+    private volatile ParallelMiner miner;
 
+    // told about every block mined and added here.
+    private final List<Consumer<Block>> blockListeners = new CopyOnWriteArrayList<>();
 
-    //  an ArrayList to hold Blocks
-    private ArrayList<Block> blockChainList;
+    // counters and histograms of mining, validation and repair.
+    private final ChainMetrics metrics = new ChainMetrics();
 
-    // hash of the most recently added Block.
-    private String hashValueOfLastBlock;
+    // optional controller of the target of blocks added at the next target.
+    private volatile DifficultyRetargeter retargeter;
+
+    // latest checkpoint, blocks up to it are sealed and those before it hold only their header.
+    private volatile Checkpoint checkpoint;
+
+    // checkpoints checkpointEvery could not sign.
+    private final LongAdder checkpointFailures = new LongAdder();
 
     /**
      * Constructor.
      */
     public BlockChain() {
-        blockChainList = new ArrayList<>();
-        hashValueOfLastBlock = "";
+        blocks = new BlockList(this::load);
+        tip = new ChainSnapshot(blocks, 0, "", null);
+        watermark = new AtomicReference<>(new Watermark(-1, 0));
+    }
+
+    /**
+     * Opens a chain persisted in a block store. Opening reads the latest block and not
+     * the others: hashes and time stamps are read from the store's index on the first
+     * lookup by hash or time, each block is decoded from its record when first used,
+     * nothing is mined again, and new blocks are appended to the store. Blocks reach the
+     * storage device at checkpoints and on {@link #close()}, see {@link BlockStore}.
+     * @param directory directory of the block store.
+     * @return BlockChain - the chain read from the store.
+     * @throws IOException if the store cannot be opened or read.
+     */
+    public static BlockChain open(Path directory) throws IOException {
+        return open(directory, null);
+    }
+
+    /**
+     * Opens a chain persisted in a block store, starting from its checkpoint when the
+     * trusted key signed it: blocks before the checkpoint are read as headers only and
+     * validation starts after it, so only the checkpoint block itself is hashed again.
+     * @param directory directory of the block store.
+     * @param trusted public key checkpoints must be signed with, null to ignore checkpoints.
+     * @return BlockChain - the chain read from the store.
+     * @throws IOException if the store cannot be opened or read, or its checkpoint does not verify.
+     */
+    public static BlockChain open(Path directory, PublicKey trusted) throws IOException {
+        BlockStore blockStore = new BlockStore(directory);
+        BlockChain chain = new BlockChain();
+        int size = blockStore.size();
+        Checkpoint trustedCheckpoint = trusted == null ? null : blockStore.readCheckpoint();
+        if (trustedCheckpoint != null) {
+            int position = trustedCheckpoint.getIndex();
+            if (position < 0 || position >= size || !trustedCheckpoint.verify(trusted)) {
+                blockStore.close();
+                throw new IOException("Checkpoint at block " + position + " is not signed by the trusted key !!");
+            }
+            if (!blockStore.read(position).calculateHash().equals(trustedCheckpoint.getHash())) {
+                blockStore.close();
+                throw new IOException("Block " + position + " does not match its checkpoint !!");
+            }
+            chain.checkpoint = trustedCheckpoint;
+            chain.watermark.set(new Watermark(trustedCheckpoint.getIndex(), 0));
+        }
+        chain.store = blockStore;
+        // hashes and time stamps come from the index file, blocks are decoded on first use.
+        chain.blocks.addUnloaded(size);
+        chain.index.addStored(blockStore, size);
+        if (size > 0) {
+            chain.tip = new ChainSnapshot(chain.blocks, size,
+                    blockStore.readHash(size - 1), chain.blocks.get(size - 1));
+        }
+        return chain;
+    }
+
+    /**
+     * getter for the store field.
+     * @return
+     */
+    public BlockStore getStore() {
+        return store;
+    }
+
+    /**
+     * Flushes and closes the store, if there is one. The chain stays readable in memory,
+     * but blocks before the checkpoint can no longer be read back in full.
+     * @throws IOException if the store cannot be flushed or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        BlockStore blockStore = store;
+        if (blockStore != null) {
+            try {
+                blockStore.flush();
+            } finally {
+                blockStore.close();
+            }
+        }
     }
 
     /**
@@ -50,146 +197,766 @@ public class BlockChain {
         return new Timestamp(System.currentTimeMillis());
     }
 
+    /**
+     * Returns a consistent view of the chain without locking or copying.
+     * @return ChainSnapshot - size, chain hash and latest block at this moment.
+     */
+    public ChainSnapshot snapshot() {
+        return tip;
+    }
+
     /**
      * Returns a reference to the most recently added Block.
      * @return a Block object that is the latest block in the Blockchain.
      */
     public Block getLatestBlock() {
-      try {
-          return blockChainList.get(blockChainList.size() - 1);
-      } catch (Exception e) {
-          throw new NullPointerException("Block chain is Empty !!");
-      }
+        return tip.getLatestBlock();
+    }
+
+    /**
+     * Returns the block at the given position.
+     * @param index position of the block.
+     * @return Block - the block.
+     */
+    public Block getBlock(int index) {
+        return blocks.get(index);
+    }
+
+    /**
+     * Finds a block by its hash in O(1).
+     * @param hash hex hash of the block.
+     * @return Block - the block, null if no block of the chain has that hash.
+     */
+    public Block getBlockByHash(String hash) {
+        int position = index.positionOf(hash);
+        if (position < 0 || position >= getChainSize()) {
+            return null;
+        }
+        Block block = blocks.get(position);
+        // a block changed through its setters no longer has the hash it was indexed under.
+        return block.getHash().equalsIgnoreCase(hash) ? block : null;
+    }
+
+    /**
+     * Finds the block pointing at a parent hash in O(1), the genesis block for "".
+     * @param previousHash hex hash of the parent.
+     * @return Block - the child block, null if no block points at that hash.
+     */
+    public Block getBlockByPreviousHash(String previousHash) {
+        int parent = index.positionOf(previousHash);
+        int position = parent >= 0 ? parent + 1 : (previousHash.isEmpty() ? 0 : -1);
+        if (position < 0 || position >= getChainSize()) {
+            return null;
+        }
+        Block block = blocks.get(position);
+        return block.getPreviousHash().equalsIgnoreCase(previousHash) ? block : null;
+    }
+
+    /**
+     * Finds the blocks with a time stamp in [from, to) in O(log n) plus the blocks found.
+     * @param from first time stamp, inclusive.
+     * @param to last time stamp, exclusive.
+     * @return List - the blocks, in time stamp order.
+     */
+    public List<Block> getBlocksBetween(Timestamp from, Timestamp to) {
+        int size = getChainSize();
+        List<Block> found = new ArrayList<>();
+        for (int position : index.positionsBetween(from, to)) {
+            if (position < size) {
+                Block block = blocks.get(position);
+                Timestamp timestamp = block.getTimestamp();
+                if (!timestamp.before(from) && timestamp.before(to)) {
+                    found.add(block);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the hash of the most recently added block.
+     * @return String - the chain hash.
+     */
+    public String getChainHash() {
+        return tip.getChainHash();
     }
 
     /**
      * Returns the size of the blockchain.
-     * @return int size of the arraylist.
+     * @return int size of the chain.
      */
     public int getChainSize() {
-        return blockChainList.size();
+        return tip.getSize();
     }
 
     /**
-     * Measures hashes per second of the computer holding this chain.
-     * It uses a simple string - "00000000" to hash.
-     * @return int hashPerSec - amount of times the loop ran.
+     * Measures hashes per second of the computer holding this chain, hashing block
+     * headers on one thread the way proofOfWork does.
+     * @return int hashPerSec - mean hashes per second.
      */
     public int hashesPerSecond() {
-        String stringToHash = "00000000";
-        int hashPerSec = 0;
-        Instant currTime = Instant.now();
-        Instant endTime = currTime.plusSeconds(1); // within 1 sec
-        // check till current time is less than endTime
-        while ( currTime.compareTo(endTime) != 1) {
+        return (int) new HashRateProbe().measure(1).getMeanHashesPerSecond();
+    }
+
+    /**
+     * getter for the miner field.
+     * @return
+     */
+    public ParallelMiner getMiner() {
+        return miner;
+    }
+
+    /**
+     * setter for the miner field, null mines on the calling thread.
+     * @param miner
+     */
+    public void setMiner(ParallelMiner miner) {
+        this.miner = miner;
+    }
+
+    /**
+     * getter for the metrics field.
+     * @return
+     */
+    public ChainMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * getter for the retargeter field.
+     * @return
+     */
+    public DifficultyRetargeter getRetargeter() {
+        return retargeter;
+    }
+
+    /**
+     * setter for the retargeter field, it is told the mining time of every block added.
+     * @param retargeter
+     */
+    public void setRetargeter(DifficultyRetargeter retargeter) {
+        this.retargeter = retargeter;
+    }
+
+    /**
+     * getter for the checkpoint field.
+     * @return Checkpoint - the latest checkpoint, null if there is none.
+     */
+    public Checkpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Validates the chain and signs a checkpoint of its latest block. Blocks up to the
+     * checkpoint can no longer change, blocks before it drop their payload, which stays
+     * readable from the store if there is one and is gone otherwise, and later
+     * validations start after the checkpoint. The checkpoint is saved in the store.
+     * A pruned block still holds its header, the time stamp, hashes, target and nonce
+     * objects included, so only the data and transactions are given back. The hashes
+     * up to the checkpoint are trusted from then on and never checked again, a change
+     * made behind the chain's back, in the store for instance, is not found.
+     * @param signer private key to sign the checkpoint with.
+     * @return Checkpoint - the new checkpoint.
+     * @throws IllegalStateException if the chain is empty or invalid.
+     */
+    public Checkpoint checkpoint(PrivateKey signer) {
+        synchronized (writeLock) {
+            int position = tip.getSize() - 1;
+            if (position < 0) {
+                throw new IllegalStateException("Block chain is Empty !!");
+            }
+            return checkpoint(position, blocks.get(position), signer);
+        }
+    }
+
+    /**
+     * Signs a checkpoint of a given block, see {@link #checkpoint(PrivateKey)}. Only the
+     * blocks up to it have to be valid. Writer only.
+     * @param position position of the block.
+     * @param block the block expected at that position.
+     * @param signer private key to sign the checkpoint with.
+     * @return Checkpoint - the new checkpoint, or the current one if it is already past the block.
+     * @throws IllegalStateException if the block is no longer at its position or the chain up to it is invalid.
+     */
+    private Checkpoint checkpoint(int position, Block block, PrivateKey signer) {
+        ChainSnapshot snapshot = tip;
+        if (position < 0 || position >= snapshot.getSize() || blocks.get(position) != block) {
+            throw new IllegalStateException("Block " + position + " was replaced since it was added !!");
+        }
+        Checkpoint current = checkpoint;
+        if (current != null && current.getIndex() >= position) {
+            return current;
+        }
+        int firstInvalid = findFirstInvalidBlock();
+        if (firstInvalid >= 0 && firstInvalid <= position) {
+            throw new IllegalStateException("Block " + firstInvalid + " is invalid, repair the chain first !!");
+        }
+        // the store holds every block the checkpoint vouches for.
+        persistFrom(snapshot.getSize(), null);
+        Checkpoint signed = Checkpoint.sign(position, block.getHash(), signer);
+        prune(signed);
+        BlockStore blockStore = store;
+        if (blockStore != null) {
             try {
-                MessageDigest messageDigest = MessageDigest.getInstance(SHA_256);
-                byte[] hash = messageDigest.digest(stringToHash.getBytes(StandardCharsets.UTF_8));
-                hashPerSec++;
-                currTime = Instant.now();
-            } catch (NoSuchAlgorithmException e) {
-                e.printStackTrace();
+                // the blocks the checkpoint vouches for reach the disk before it does.
+                blockStore.flush();
+                blockStore.writeCheckpoint(signed);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write the checkpoint to the store", e);
             }
         }
-        return hashPerSec;
+        return signed;
+    }
+
+    /**
+     * Signs a checkpoint every time the chain grows by a number of blocks, of the block
+     * that completed the multiple even if more were added before the listener ran. A
+     * checkpoint that cannot be signed, because the chain up to that block is invalid or
+     * the block was repaired meanwhile, is logged and counted, and the next multiple
+     * tries again.
+     * @param interval number of blocks between checkpoints.
+     * @param signer private key to sign the checkpoints with.
+     */
+    public void checkpointEvery(int interval, PrivateKey signer) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be > 0 !!");
+        }
+        addBlockListener(block -> {
+            // addBlock set the index to the block's position under the lock.
+            int position = block.getIndex();
+            if ((position + 1) % interval != 0) {
+                return;
+            }
+            try {
+                synchronized (writeLock) {
+                    checkpoint(position, block, signer);
+                }
+            } catch (IllegalStateException | UncheckedIOException e) {
+                checkpointFailures.increment();
+                LOGGER.log(Level.WARNING, "Could not checkpoint block " + position, e);
+            }
+        });
+    }
+
+    /**
+     * getter for the number of checkpoints {@link #checkpointEvery(int, PrivateKey)} could not sign.
+     * @return
+     */
+    public long getCheckpointFailures() {
+        return checkpointFailures.sum();
+    }
+
+    /**
+     * Seals the blocks up to a checkpoint and replaces those before it by their headers,
+     * copies are swapped in so readers holding a block keep a complete one. Writer only.
+     * @param trusted the new checkpoint.
+     */
+    private void prune(Checkpoint trusted) {
+        Checkpoint previous = checkpoint;
+        int position = trusted.getIndex();
+        for (int i = previous == null ? 0 : previous.getIndex(); i <= position; i++) {
+            Block block = blocks.get(i);
+            if (block.isPruned()) {
+                continue;
+            }
+            Block replacement = i < position ? block.header() : block.seal();
+            replacement.attach(this, i);
+            blocks.set(i, replacement);
+        }
+        ChainSnapshot snapshot = tip;
+        if (position == snapshot.getSize() - 1) {
+            // the checkpoint block is the latest block, publish its sealed copy.
+            tip = new ChainSnapshot(blocks, position + 1, trusted.getHash(), blocks.get(position));
+        }
+        checkpoint = trusted;
+    }
+
+    /**
+     * Loads a block of an opened chain from the store when it is first used: blocks
+     * before the checkpoint as headers only, the checkpoint block sealed.
+     * @param position position of the block.
+     * @return Block - the block, attached to this chain.
+     */
+    private Block load(int position) {
+        BlockStore blockStore = store;
+        Checkpoint trusted = checkpoint;
+        int checkpointIndex = trusted == null ? -1 : trusted.getIndex();
+        Block block;
+        try {
+            if (position < checkpointIndex) {
+                // the payload stays in the store until it is asked for.
+                block = blockStore.readHeader(position);
+            } else if (position == checkpointIndex) {
+                block = blockStore.read(position).seal();
+            } else {
+                block = blockStore.read(position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read block " + position + " from the store", e);
+        }
+        block.attach(this, position);
+        return block;
+    }
+
+    /**
+     * Reads a block back from the store, for the payload of a header only block.
+     * @param position position of the block.
+     * @return Block - the full block, unattached, null if there is no store.
+     */
+    Block readArchived(int position) {
+        BlockStore blockStore = store;
+        if (blockStore == null) {
+            return null;
+        }
+        try {
+            return blockStore.read(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read block " + position + " from the store", e);
+        }
     }
 
     /**
-     * Adds a block to the chain, sets previous hash to hashValueOfLastBlock,
-     * and sets the new hashValueOfLastBlock to hash of most recent block.
+     * Adds a block to the chain, sets its index to its position and its previous hash
+     * to the chain hash, mines it, and only then publishes it as the new latest block,
+     * so readers never see a block that is not fully mined.
      * @param block
      */
     public void addBlock(Block block) {
-        // add the block to the list
-        blockChainList.add(block);
-        // set the blocks prev hash value to the prev last hash value
-        block.setPreviousHash(hashValueOfLastBlock);
-        // set the new hash value of last block
-        hashValueOfLastBlock = block.proofOfWork();;
+        try {
+            addBlock(block, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // cannot happen without a time limit.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Adds a block like {@link #addBlock(Block)}, giving up when no good hash is found
+     * within a time limit, so a too high difficulty cannot hold the chain forever.
+     * @param block
+     * @param timeout the maximum time to mine.
+     * @param unit unit of the timeout.
+     * @throws TimeoutException if no good hash was found in time, the block is not added.
+     */
+    public void addBlock(Block block, long timeout, TimeUnit unit) throws TimeoutException {
+        synchronized (writeLock) {
+            // the index is read under the lock, no other block can take the position first.
+            block.setIndex(blocks.size());
+            // set the blocks prev hash value to the prev last hash value
+            block.setPreviousHash(tip.getChainHash());
+            // mine before the block becomes visible to readers
+            long miningStart = System.nanoTime();
+            String minedHash = mine(block, false, unit.toNanos(timeout));
+            DifficultyRetargeter blockRetargeter = retargeter;
+            if (blockRetargeter != null) {
+                blockRetargeter.record(block.getTarget(), System.nanoTime() - miningStart);
+            }
+            publish(block, minedHash);
+        }
+        for (Consumer<Block> listener : blockListeners) {
+            listener.accept(block);
+        }
+    }
+
+    /**
+     * Appends a block mined elsewhere, for instance received from another node.
+     * The caller has checked that the hash is the block's hash and meets its target.
+     * Block listeners are not told, they only hear about blocks mined here.
+     * @param block the block.
+     * @param hash hex hash of the block.
+     * @return boolean - false if the block does not extend the chain's latest block.
+     */
+    boolean appendMined(Block block, String hash) {
+        synchronized (writeLock) {
+            if (block.getIndex() != blocks.size() || !block.getPreviousHash().equals(tip.getChainHash())) {
+                return false;
+            }
+            block.recordHash(hash);
+            publish(block, hash);
+            return true;
+        }
+    }
+
+    /**
+     * Makes a mined block the chain's latest block. Writer only. The block is written to
+     * the store first, a block that cannot be persisted is not added at all.
+     */
+    private void publish(Block block, String hash) {
+        int position = blocks.size();
+        persistFrom(position, block);
+        // let the block report later changes to this chain
+        block.attach(this, position);
+        blocks.add(block);
+        index.add(hash, block.getTimestamp());
+        // publish the new hash value of last block
+        tip = new ChainSnapshot(blocks, position + 1, hash, block);
+    }
+
+    /**
+     * Adds a listener told about every block added by {@link #addBlock(Block)},
+     * after the block is on the chain.
+     * @param listener the listener.
+     */
+    public void addBlockListener(Consumer<Block> listener) {
+        blockListeners.add(listener);
+    }
+
+    /**
+     * Removes a block listener.
+     * @param listener the listener.
+     */
+    public void removeBlockListener(Consumer<Block> listener) {
+        blockListeners.remove(listener);
+    }
+
+    /**
+     * Adds a block at the target the retargeter picks for the next block, instead of
+     * the block's own difficulty.
+     * @param block
+     * @throws IllegalStateException if no retargeter is set.
+     */
+    public void addBlockAtNextTarget(Block block) {
+        try {
+            addBlockAtNextTarget(block, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // cannot happen without a time limit.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Adds a block at the next target, giving up when no good hash is found within a time limit.
+     * @param block
+     * @param timeout the maximum time to mine.
+     * @param unit unit of the timeout.
+     * @throws IllegalStateException if no retargeter is set.
+     * @throws TimeoutException if no good hash was found in time, the block is not added.
+     */
+    public void addBlockAtNextTarget(Block block, long timeout, TimeUnit unit) throws TimeoutException {
+        DifficultyRetargeter blockRetargeter = retargeter;
+        if (blockRetargeter == null) {
+            throw new IllegalStateException("No difficulty retargeter set !!");
+        }
+        synchronized (writeLock) {
+            block.setTarget(blockRetargeter.nextTarget());
+            addBlock(block, timeout, unit);
+        }
+    }
+
+    /**
+     * Rewrites the blocks from the given position on in the store, if there is one,
+     * then appends the next block. A store left behind by an earlier failure is
+     * rewritten from where it stops. Writer only.
+     * @param position first block to write.
+     * @param next block to append after the chain's blocks, null for none.
+     */
+    private void persistFrom(int position, Block next) {
+        BlockStore blockStore = store;
+        if (blockStore == null) {
+            return;
+        }
+        int from = Math.min(position, blockStore.size());
+        try {
+            blockStore.truncate(from);
+            for (int i = from; i < blocks.size(); i++) {
+                blockStore.append(i, blocks.get(i));
+            }
+            if (next != null) {
+                blockStore.append(blocks.size(), next);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write block " + from + " on to the store", e);
+        }
+    }
+
+    /**
+     * Runs the proof of work of the block, on the miner when one is set.
+     * @param block the block to mine.
+     * @return String - Hex SHA256 hash with correct difficulty level.
+     */
+    private String mine(Block block) {
+        return mine(block, false);
+    }
+
+    /**
+     * Runs the proof of work of the block, on the miner when one is set.
+     * @param block the block to mine.
+     * @param repair true when a repair mines the block again, it is then counted as
+     * re-mined instead of as a newly mined block.
+     * @return String - Hex SHA256 hash with correct difficulty level.
+     */
+    private String mine(Block block, boolean repair) {
+        try {
+            return mine(block, repair, Long.MAX_VALUE);
+        } catch (TimeoutException e) {
+            // cannot happen without a time limit.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Runs the proof of work of the block within a time limit.
+     * @param block the block to mine.
+     * @param repair true when a repair mines the block again.
+     * @param timeoutNanos the maximum time to mine.
+     * @return String - Hex SHA256 hash with correct difficulty level.
+     * @throws TimeoutException if no good hash was found in time.
+     */
+    private String mine(Block block, boolean repair, long timeoutNanos) throws TimeoutException {
+        long startNanos = System.nanoTime();
+        ParallelMiner blockMiner = miner;
+        String minedHash;
+        long attempts;
+        if (blockMiner == null) {
+            BigInteger firstNonce = block.getNonce();
+            minedHash = block.proofOfWork(metrics, timeoutNanos);
+            if (minedHash == null) {
+                throw new TimeoutException("No valid hash found for block " + block.getIndex()
+                        + " within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+            }
+            attempts = block.getNonce().subtract(firstNonce).longValue() + 1;
+        } else {
+            try {
+                MiningResult result = blockMiner.mine(block, timeoutNanos, TimeUnit.NANOSECONDS, metrics);
+                minedHash = result.getHash();
+                attempts = result.getAttempts();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while mining block " + block.getIndex(), e);
+            }
+        }
+        if (repair) {
+            metrics.blockReMined();
+        } else {
+            metrics.blockMined(block, attempts, System.nanoTime() - startNanos);
+        }
+        return minedHash;
     }
 
     /**
      * Method to get a string representation of the blockchain.
+     * Long chains should be streamed with {@link ChainExporter} instead.
      * @return a String representation of the entire chain is returned.
      */
     @Override
     public String toString() {
-        JSONObject jsonObject = new JSONObject()
-                        .put("ds_chain", blockChainList)
-                        .put("chainHash", hashValueOfLastBlock);
-        return jsonObject.toString();
-    }
-
-    private boolean checkIfGenesisBlockValid() {
-        Block genesis = blockChainList.get(0);
-        String genesisHash = hashValueOfLastBlock;
-        String computedGenesisHash = genesis.proofOfWork();
-        // this is the number of leading zeros expected.
-        String leadingHexZeros = "0".repeat(genesis.getDifficulty());
-        // computed hash and extract the leading zeros.
-        String calculatedLeadingHexZeros = computedGenesisHash.substring(0, genesis.getDifficulty());
-        if (calculatedLeadingHexZeros.equals(leadingHexZeros)
-                && genesisHash.equals(computedGenesisHash)) {
-            return true;
-        } else {
-            return false;
+        StringWriter writer = new StringWriter();
+        try {
+            ChainExporter.writeJson(this, writer);
+        } catch (IOException e) {
+            // a StringWriter does not throw.
+            throw new UncheckedIOException(e);
         }
+        return writer.toString();
     }
 
     /**
      * Verifies whether the the hashes of each block are correct.
+     * Only dirty blocks are hashed again, and blocks up to the verified
+     * watermark are skipped since they were already checked and not changed since.
      * @return boolean - false if the hashes are not correct - true if hashes are correct.
      */
     public boolean isChainValid() {
-        if (blockChainList.size() == 1) {
-            // Block chain has only the genesis block.
-            checkIfGenesisBlockValid();
+        return findFirstInvalidBlock() < 0;
+    }
+
+    /**
+     * Finds the first block whose hash, target or link to its parent is wrong.
+     * With parallel validation on and at least PARALLEL_VALIDATION_THRESHOLD blocks
+     * to check, the hashes are computed on all cores first and then a linear pass
+     * checks the links, so the result is the same as the sequential check.
+     * @return int - index of the first invalid block, -1 if the chain is valid.
+     */
+    public int findFirstInvalidBlock() {
+        long startNanos = System.nanoTime();
+        int firstInvalid = findFirstInvalidBlockSinceWatermark();
+        metrics.chainValidated(firstInvalid, System.nanoTime() - startNanos);
+        return firstInvalid;
+    }
+
+    /**
+     * Validation without the metrics, see {@link #findFirstInvalidBlock()}.
+     */
+    private int findFirstInvalidBlockSinceWatermark() {
+        // validate one consistent snapshot, blocks appended meanwhile are left for the next call.
+        ChainSnapshot snapshot = tip;
+        Watermark verified = watermark.get();
+        int size = snapshot.getSize();
+        if (size == 0) {
+            return -1;
+        }
+        int start = Math.min(verified.upTo + 1, size);
+        int toCheck = size - start;
+        IntFunction<String> hashOf;
+        if (parallelValidation && toCheck >= PARALLEL_VALIDATION_THRESHOLD) {
+            // each block's hash depends only on its own fields, compute the dirty ones all at once.
+            String[] hashes = new String[toCheck];
+            IntStream.range(0, toCheck).parallel()
+                    .forEach(k -> hashes[k] = blocks.get(start + k).getHash());
+            hashOf = i -> hashes[i - start];
         } else {
-            // If block chain has more blocks.
-            for (int i = 0; i < blockChainList.size(); i++) {
-                Block currentBlock = blockChainList.get(i);
-                // expected number of zero
-                String leadingHexZerosExpected = "0".repeat(currentBlock.getDifficulty());
-                // current block hash
-                String currentBlockHash = currentBlock.proofOfWork();
-                // current block leading zero
-                String currentBlockLeadingZeros = currentBlockHash.substring(0, currentBlock.getDifficulty());
-                if (i == blockChainList.size() - 1) {
-                    // if it's the last block, check the hash with the hashValueOfLastBlock
-                    if (!currentBlockHash.equals(hashValueOfLastBlock)) {
-                        return false;
-                    }
-                } else {
-                    // if not the last block match with next block's prev hash and also check the leading zero's
-                    Block nextBlock = blockChainList.get(i + 1);
-                    String nextBlockPrevHash = nextBlock.getPreviousHash();
-                    if (!currentBlockHash.equals(nextBlockPrevHash)) {
-                        if (currentBlockLeadingZeros.equals(leadingHexZerosExpected))
-                        return false;
-                    }
-                }
+            hashOf = i -> blocks.get(i).getHash();
+        }
+        // hash of the block before the first one to check.
+        String previousBlockHash = start == 0 ? "" : blocks.get(start - 1).getHash();
+        int firstInvalid = -1;
+        for (int i = start; i < size; i++) {
+            Block currentBlock = blocks.get(i);
+            // current block hash, cached unless the block is dirty.
+            String currentBlockHash = hashOf.apply(i);
+            if (!currentBlock.getTarget().isMetBy(currentBlockHash)
+                    // a batched block must still commit to the Merkle root of its transactions.
+                    || !currentBlock.hasValidMerkleRoot()
+                    // every block after the genesis must point at the hash of its parent.
+                    || (i > 0 && !currentBlock.getPreviousHash().equals(previousBlockHash))) {
+                firstInvalid = i;
+                break;
             }
+            previousBlockHash = currentBlockHash;
+        }
+        // the last block's hash must be the chain hash.
+        if (firstInvalid < 0 && !previousBlockHash.equals(snapshot.getChainHash())) {
+            firstInvalid = size - 1;
         }
-        return true;
+        // the prefix before the first invalid block is valid, move the watermark unless a
+        // block changed while it was checked.
+        int validUpTo = firstInvalid < 0 ? size - 1 : firstInvalid - 1;
+        if (validUpTo > verified.upTo) {
+            watermark.compareAndSet(verified, new Watermark(validUpTo, verified.epoch));
+        }
+        return firstInvalid;
+    }
+
+    /**
+     * getter for the parallel validation field.
+     * @return
+     */
+    public boolean isParallelValidation() {
+        return parallelValidation;
+    }
+
+    /**
+     * setter for the parallel validation field.
+     * @param parallelValidation
+     */
+    public void setParallelValidation(boolean parallelValidation) {
+        this.parallelValidation = parallelValidation;
+    }
+
+    /**
+     * Called when a block is changed, the watermark goes back before that block
+     * so that the next validation checks it again.
+     * @param position position of the changed block in the chain.
+     */
+    void invalidateFrom(int position) {
+        Checkpoint trusted = checkpoint;
+        if (trusted != null && position <= trusted.getIndex()) {
+            // only a block already swapped for its sealed copy can change there.
+            return;
+        }
+        Watermark current;
+        do {
+            current = watermark.get();
+            // the epoch moves on every change so a validation running meanwhile cannot move the watermark.
+        } while (!watermark.compareAndSet(current,
+                new Watermark(Math.min(current.upTo, position - 1), current.epoch + 1)));
+    }
+
+    /**
+     * getter for the verified watermark.
+     * @return int - index of the last block known to be valid, -1 if none.
+     */
+    public int getVerifiedUpTo() {
+        return watermark.get().upTo;
     }
 
     /**
-     * This routine repairs the chain. It checks the hashes
-     * of each block and ensures that any illegal hashes are recomputed.
+     * This routine repairs the chain. It finds the first invalid block and, from
+     * there on, points each block at its parent and mines it again if its hash no
+     * longer meets its target, so every block is mined at most once.
      * After this routine is run, the chain will be valid.
+     * @return RepairReport - where the repair started, how many blocks were mined and how long it took.
      */
-    public void repairChain() {
-        for (int i = 0; i < blockChainList.size(); i++) {
-            // for the last block.
-            if (i == blockChainList.size() - 1) {
-                String prevHash = blockChainList.get(i-1).proofOfWork();
-                blockChainList.get(i).setPreviousHash(prevHash);
-                hashValueOfLastBlock = blockChainList.get(i).proofOfWork();
-            } else {
-                // for each block the previous hash value should be set.
-                String prevHash = blockChainList.get(i).proofOfWork();
-                blockChainList.get(i + 1).setPreviousHash(prevHash);
+    public RepairReport repairChain() {
+        long startNanos = System.nanoTime();
+        RepairReport report = repairFromFirstInvalidBlock();
+        metrics.chainRepaired(report, System.nanoTime() - startNanos);
+        return report;
+    }
+
+    /**
+     * Repair without the metrics, see {@link #repairChain()}.
+     */
+    private RepairReport repairFromFirstInvalidBlock() {
+        synchronized (writeLock) {
+            long startTime = System.currentTimeMillis();
+            // part of the repair, not recorded as a validation of its own.
+            int firstInvalid = findFirstInvalidBlockSinceWatermark();
+            if (firstInvalid < 0) {
+                return new RepairReport(-1, 0, System.currentTimeMillis() - startTime);
+            }
+            int reMined = 0;
+            int size = blocks.size();
+            String prevHash = firstInvalid == 0 ? "" : blocks.get(firstInvalid - 1).getHash();
+            if (firstInvalid > 0) {
+                // a changed block is only caught at its child, the parent needs indexing again too.
+                index.replace(firstInvalid - 1, prevHash, blocks.get(firstInvalid - 1).getTimestamp());
+            }
+            for (int i = firstInvalid; i < size; i++) {
+                Block currentBlock = blocks.get(i);
+                boolean relink = i > 0 && !currentBlock.getPreviousHash().equals(prevHash);
+                // clean blocks return their cached hash, only broken ones are mined again.
+                String currentHash = currentBlock.getHash();
+                if (!relink && currentBlock.hasValidMerkleRoot()
+                        && currentBlock.getTarget().isMetBy(currentHash)) {
+                    // still valid, but its setters may have changed the hash it was indexed under.
+                    index.replace(i, currentHash, currentBlock.getTimestamp());
+                    prevHash = currentHash;
+                    continue;
+                }
+                // fix a copy, readers keep seeing the old block until the copy is mined.
+                Block repaired = currentBlock.copy();
+                // point the block at its parent.
+                if (relink) {
+                    repaired.setPreviousHash(prevHash);
+                }
+                // a batched block goes back to committing to its transactions.
+                if (!repaired.hasValidMerkleRoot()) {
+                    repaired.setData(repaired.getMerkleRoot());
+                }
+                currentHash = repaired.getHash();
+                if (!repaired.getTarget().isMetBy(currentHash)) {
+                    currentHash = mine(repaired, true);
+                    reMined++;
+                }
+                repaired.attach(this, i);
+                blocks.set(i, repaired);
+                index.replace(i, currentHash, repaired.getTimestamp());
+                invalidateFrom(i);
+                prevHash = currentHash;
             }
+            tip = new ChainSnapshot(blocks, size, prevHash, blocks.get(size - 1));
+            // the parent may be the changed block, its new fields still met its target.
+            persistFrom(Math.max(0, firstInvalid - 1), null);
+            return new RepairReport(firstInvalid, reMined, System.currentTimeMillis() - startTime);
+        }
+    }
+
+    /**
+     * The verified prefix of the chain. The epoch changes whenever a block changes,
+     * so a validation only moves the watermark if nothing changed while it ran.
+     */
+    private static final class Watermark {
+
+        // index of the last block of the verified prefix, -1 when nothing is verified yet.
+        private final int upTo;
+
+        // number of block changes seen so far.
+        private final long epoch;
+
+        Watermark(int upTo, long epoch) {
+            this.upTo = upTo;
+            this.epoch = epoch;
         }
     }
 
@@ -205,9 +972,8 @@ public class BlockChain {
         System.out.println("4. Corrupt the chain.");
         System.out.println("5. Hide the corruption by recomputing hashes.");
         System.out.println("6. Exit");
-        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(System.in));
         try {
-            String operation = bufferedReader.readLine();
+            String operation = STDIN.readLine();
             return operation;
         } catch (IOException e) {
             e.printStackTrace();
@@ -221,27 +987,41 @@ public class BlockChain {
      */
     private static void optionZero(BlockChain currentBlockChain) {
         System.out.println("Current chain size: " + currentBlockChain.getChainSize());
-        System.out.println("Current hashes per second by this machine: " + currentBlockChain.hashesPerSecond());
-        System.out.println("Difficulty of most recent block: " + currentBlockChain.getLatestBlock().getDifficulty());
+        HashRateReport hashRate = new HashRateProbe().measure(1);
+        int difficulty = currentBlockChain.getLatestBlock().getDifficulty();
+        System.out.println("Current hashes per second by this machine: " + (int) hashRate.getMeanHashesPerSecond());
+        System.out.println("Difficulty of most recent block: " + difficulty);
+        System.out.printf("Expected time to mine at this difficulty: %.3f seconds%n",
+                hashRate.getExpectedSecondsToMine(difficulty));
         System.out.println("Nonce for most recent block: " + currentBlockChain.getLatestBlock().getNonce());
-        System.out.println("Chain hash: " + currentBlockChain.hashValueOfLastBlock);
+        System.out.println("Chain hash: " + currentBlockChain.getChainHash());
+        System.out.println("Metrics: " + currentBlockChain.getMetrics());
     }
 
     /**
      * Option one chosen by user.
-     * @param currentBlockChain the current block chain.
+     * @param pipeline the pipeline mining blocks of the current block chain.
      */
-    private static void optionOne(BlockChain currentBlockChain) throws IOException {
-        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(System.in));
-        System.out.println("Enter difficulty > 0");
-        String difficulty =  bufferedReader.readLine();
+    private static void optionOne(MiningPipeline pipeline) throws IOException {
+        System.out.println("Enter difficulty > 0, or auto");
+        String difficulty =  STDIN.readLine();
         System.out.println("Enter transaction: ");
-        String data =  bufferedReader.readLine();
+        String data =  STDIN.readLine();
         long startTime = System.currentTimeMillis();
-        Block newBlock = new Block(currentBlockChain.getChainSize(), currentBlockChain.getTime(), data, Integer.parseInt(difficulty));
-        currentBlockChain.addBlock(newBlock);
-        long endTime = System.currentTimeMillis();
-        System.out.println("Total time to add new block was " + (endTime - startTime) + " milliseconds.");
+        // the block is mined in the background, the menu stays usable meanwhile.
+        CompletableFuture<Block> added = AUTO_DIFFICULTY.equalsIgnoreCase(difficulty.trim())
+                ? pipeline.submit(data)
+                : pipeline.submit(data, Integer.parseInt(difficulty));
+        added.whenComplete((newBlock, error) -> {
+            if (error != null) {
+                System.out.println("Could not add block: " + error.getMessage());
+                return;
+            }
+            long endTime = System.currentTimeMillis();
+            System.out.println("Total time to add block " + newBlock.getIndex() + " (about "
+                    + Math.round(newBlock.getTarget().getExpectedAttempts()) + " hashes expected) was "
+                    + (endTime - startTime) + " milliseconds.");
+        });
     }
 
     /**
@@ -251,9 +1031,12 @@ public class BlockChain {
     private static void optionTwo(BlockChain currentBlockChain) {
         System.out.println("Verifying entire chain...");
         long startTime = System.currentTimeMillis();
-        boolean validChain = currentBlockChain.isChainValid();
+        int firstInvalidBlock = currentBlockChain.findFirstInvalidBlock();
         long endTime = System.currentTimeMillis();
-        System.out.println("Chain verification: " + validChain);
+        System.out.println("Chain verification: " + (firstInvalidBlock < 0));
+        if (firstInvalidBlock >= 0) {
+            System.out.println("First invalid block: " + firstInvalidBlock);
+        }
         System.out.println("Total time required for verification: " + (endTime - startTime) + " milliseconds.");
     }
 
@@ -262,18 +1045,17 @@ public class BlockChain {
      * @param currentBlockChain the current block chain.
      */
     private static void optionFour(BlockChain currentBlockChain) throws IOException {
-        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(System.in));
         System.out.print("Enter block ID of block to Corrupt : ");
-        int corruptBlock = Integer.parseInt( bufferedReader.readLine());
+        int corruptBlock = Integer.parseInt(STDIN.readLine());
 
         while (corruptBlock < 0 || corruptBlock > currentBlockChain.getChainSize()) {
             System.out.print("Please enter a valid block id to corrupt: ");
-            corruptBlock = Integer.parseInt( bufferedReader.readLine());
+            corruptBlock = Integer.parseInt(STDIN.readLine());
         }
 
         System.out.print("Enter new data for block " + corruptBlock + ": ");
-        String corruptData = bufferedReader.readLine();
-        currentBlockChain.blockChainList.get(corruptBlock - 1).setData(corruptData);
+        String corruptData = STDIN.readLine();
+        currentBlockChain.getBlock(corruptBlock - 1).setData(corruptData);
         System.out.println("Block " + corruptBlock + " now holds " + corruptData);
     }
 
@@ -282,23 +1064,81 @@ public class BlockChain {
      * @param currentBlockChain the current block chain.
      */
     private static void optionFive(BlockChain currentBlockChain) throws IOException {
-        long startTime = System.currentTimeMillis();
-        currentBlockChain.repairChain();
-        long endTime = System.currentTimeMillis();
+        RepairReport report = currentBlockChain.repairChain();
         System.out.println("Chain repaired.");
-        System.out.println("Total time required for repair: " + (endTime - startTime) + " milliseconds.");
+        if (report.getFirstInvalidBlock() >= 0) {
+            System.out.println("Repair started at block " + report.getFirstInvalidBlock()
+                    + ", blocks mined again: " + report.getBlocksReMined());
+        }
+        System.out.println("Total time required for repair: " + report.getElapsedMillis() + " milliseconds.");
     }
 
 
     /**
      * Method Processes user input calls appropriate routine based on choice.
+     * @param directory block store to open, null keeps the chain in memory only.
+     * @param port port to replicate the chain on, null to not replicate.
+     * @param peers nodes to sync with.
+     * @param httpPort port to serve the HTTP API on instead of the menu, null for the menu.
      */
-    private static void processInputRequest() {
-        // Creates new blockchain.
-        BlockChain newBlockChain = new BlockChain();
-        // Creates genesis block.
-        Block genesis = new Block(0, newBlockChain.getTime(), "", 2);
-        newBlockChain.addBlock(genesis);
+    private static void processInputRequest(String directory, Integer port, List<InetSocketAddress> peers,
+            Integer httpPort) throws IOException, InterruptedException {
+        // Creates new blockchain, or reopens the persisted one.
+        BlockChain newBlockChain = directory == null ? new BlockChain() : BlockChain.open(Paths.get(directory));
+        ParallelMiner parallelMiner = new ParallelMiner();
+        newBlockChain.setMiner(parallelMiner);
+        newBlockChain.setParallelValidation(true);
+        LedgerNode node = null;
+        if (port != null || !peers.isEmpty()) {
+            node = new LedgerNode(newBlockChain, new InetSocketAddress(port == null ? 0 : port));
+            System.out.println("Replicating on port " + node.getLocalAddress().getPort());
+            for (InetSocketAddress peer : peers) {
+                node.connect(peer);
+            }
+            // a standby node takes the genesis block of its peers instead of creating its own.
+            long deadline = System.currentTimeMillis() + PEER_SYNC_WAIT_MILLIS;
+            while (!peers.isEmpty() && newBlockChain.getChainSize() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+        }
+        if (newBlockChain.getChainSize() == 0) {
+            // Creates genesis block.
+            Block genesis = new Block(0, newBlockChain.getTime(), "", 2);
+            newBlockChain.addBlock(genesis);
+        }
+        newBlockChain.setRetargeter(new DifficultyRetargeter(BLOCK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS,
+                RETARGET_WINDOW, newBlockChain.getLatestBlock().getTarget()));
+        MiningPipeline pipeline = new MiningPipeline(newBlockChain, PIPELINE_CAPACITY);
+        newBlockChain.getMetrics().registerMBean(directory == null ? "ledger" : directory);
+        if (httpPort != null) {
+            LedgerHttpServer server = new LedgerHttpServer(newBlockChain, pipeline, new InetSocketAddress(httpPort));
+            server.start();
+            System.out.println("Serving the HTTP API on port " + server.getAddress().getPort());
+            // the server threads do the work from here on, until the JVM is asked to stop.
+            CountDownLatch stopped = new CountDownLatch(1);
+            LedgerNode replicator = node;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.stop();
+                    pipeline.shutdownNow();
+                    // give up the block being mined instead of waiting for its proof of work.
+                    parallelMiner.shutdown();
+                    pipeline.awaitTermination(SHUTDOWN_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (replicator != null) {
+                        replicator.close();
+                    }
+                    newBlockChain.close();
+                } catch (IOException e) {
+                    System.out.println("Could not close the block store: " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    stopped.countDown();
+                }
+            }, "ledger-shutdown"));
+            stopped.await();
+            return;
+        }
         while (true) {
             String userInput = getUserInput();
             try {
@@ -307,13 +1147,15 @@ public class BlockChain {
                         optionZero(newBlockChain);
                         break;
                     case "1":
-                        optionOne(newBlockChain);
+                        optionOne(pipeline);
                         break;
                     case "2":
                         optionTwo(newBlockChain);
                         break;
                     case "3":
-                        System.out.println(newBlockChain.toString());
+                        // stream the chain instead of building one huge string.
+                        ChainExporter.writeJson(newBlockChain, System.out);
+                        System.out.println();
                         break;
                     case "4":
                         optionFour(newBlockChain);
@@ -322,7 +1164,11 @@ public class BlockChain {
                         optionFive(newBlockChain);
                         break;
                     case "6":
-                        System.exit(0);
+                        try {
+                            newBlockChain.close();
+                        } finally {
+                            System.exit(0);
+                        }
                         break;
                     default:
                         System.out.println("Not supported option!!");
@@ -338,14 +1184,33 @@ public class BlockChain {
      * This routine acts as a test driver for your Blockchain.
      * It will begin by creating a BlockChain object and then adding the Genesis block to the chain.
      * The Genesis block will be created with an empty string as the pervious hash and a difficulty of 2.
-     * @param args
+     * @param args optional directory of a block store to keep the chain in, then
+     * optionally --port n to replicate the chain on and --peer host:port for each node to sync with,
+     * and --http n to serve the HTTP API on instead of the menu.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException, InterruptedException {
         /*
         Difficulty lvl 4: Avg time to add is 50 milliseconds.
         Difficulty lvl 5: Avg time to add is 950 milliseconds.
         */
-        processInputRequest();
+        String directory = null;
+        Integer port = null;
+        Integer httpPort = null;
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("--port".equals(args[i]) && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if ("--http".equals(args[i]) && i + 1 < args.length) {
+                httpPort = Integer.parseInt(args[++i]);
+            } else if ("--peer".equals(args[i]) && i + 1 < args.length) {
+                String peer = args[++i];
+                int colon = peer.lastIndexOf(':');
+                peers.add(new InetSocketAddress(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1))));
+            } else {
+                directory = args[i];
+            }
+        }
+        processInputRequest(directory, port, peers, httpPort);
     }
 
 }
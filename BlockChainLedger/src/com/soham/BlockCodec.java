@@ -0,0 +1,404 @@
+package com.soham;
+
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * This class is a compact, versioned binary codec for a Block, the binary
+ * counterpart of {@link Block#toString()}. An encoded block is:
+ * version byte, 32 byte hash, varint index, varint epoch millis, varint
+ * sub-millisecond nanos, varint difficulty, varint target bits, numeric target flag
+ * (+ 32 byte maximum), nonce (tag + varint long, or tag + length prefixed BigInteger),
+ * previous hash (tag + 32 raw bytes, or tag + length prefixed UTF-8 when it is not a hash),
+ * UTF-8 data prefixed by its length plus one (since version 3, 0 for null data; plain
+ * length before) and (since version 2) the number of transactions plus one,
+ * 0 for a single transaction block, followed by each transaction length prefixed.
+ * Signed numbers are zigzag encoded. Strings are encoded straight into the buffer
+ * without going through a byte array, with a lone surrogate replaced by '?' the way
+ * the block's hash sees it. Decoded lengths and counts are not trusted:
+ * one that could not fit in the bytes left is rejected before anything is allocated,
+ * so a hostile block costs no more memory than its own bytes.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public final class BlockCodec {
+
+    // current format version, the first byte of every encoded block.
+    public static final byte VERSION = 3;
+
+    // first version, without the transactions of batched blocks.
+    private static final byte VERSION_1 = 1;
+
+    // second version, data could not be null.
+    private static final byte VERSION_2 = 2;
+
+    // tags for values that have a compact and a general form.
+    private static final byte COMPACT = 0;
+    private static final byte GENERAL = 1;
+
+    // a lone surrogate becomes '?', the byte String.getBytes hashes it as.
+    private static final ThreadLocal<CharsetEncoder> UTF_8 =
+            ThreadLocal.withInitial(() -> StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE));
+
+    private BlockCodec() {
+    }
+
+    /**
+     * Writes a block at the buffer's position.
+     * @param block the block to encode.
+     * @param buffer the buffer to write to, needs {@link #encodedLength(Block)} bytes left.
+     * @throws BufferOverflowException if the buffer is too small.
+     */
+    public static void encode(Block block, ByteBuffer buffer) {
+        Timestamp timestamp = block.getTimestamp();
+        Target target = block.getTarget();
+        byte[] maximum = target.getMaximum();
+        buffer.put(VERSION);
+        buffer.put(BlockHasher.fromHex(block.getHash()));
+        putVarLong(buffer, zigzag(block.getIndex()));
+        putVarLong(buffer, zigzag(timestamp.getTime()));
+        putVarLong(buffer, timestamp.getNanos() % 1_000_000);
+        putVarLong(buffer, zigzag(block.getDifficulty()));
+        putVarLong(buffer, target.getLeadingZeroBits());
+        if (maximum == null) {
+            buffer.put(COMPACT);
+        } else {
+            buffer.put(GENERAL).put(maximum);
+        }
+        if (block.hasLongNonce()) {
+            buffer.put(COMPACT);
+            putVarLong(buffer, block.getLongNonce());
+        } else {
+            byte[] nonce = block.getNonce().toByteArray();
+            buffer.put(GENERAL);
+            putVarLong(buffer, nonce.length);
+            buffer.put(nonce);
+        }
+        byte[] previousHash = rawHash(block.getPreviousHash());
+        if (previousHash != null) {
+            buffer.put(COMPACT).put(previousHash);
+        } else {
+            buffer.put(GENERAL);
+            putString(buffer, block.getPreviousHash());
+        }
+        putNullableString(buffer, block.getData());
+        List<String> transactions = block.getTransactions();
+        putVarLong(buffer, transactions == null ? 0 : transactions.size() + 1L);
+        if (transactions != null) {
+            for (String transaction : transactions) {
+                putString(buffer, transaction);
+            }
+        }
+    }
+
+    /**
+     * Encodes a block into a new buffer of the exact size.
+     * @param block the block to encode.
+     * @return ByteBuffer - the encoded block, ready to be read.
+     */
+    public static ByteBuffer encode(Block block) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedLength(block));
+        encode(block, buffer);
+        return buffer.flip();
+    }
+
+    /**
+     * Reads a block from the buffer's position.
+     * @param buffer the buffer to read from.
+     * @return Block - the decoded block, not attached to a chain, its hash is
+     * computed from its fields when first needed.
+     * @throws IllegalArgumentException if the version is not supported.
+     */
+    public static Block decode(ByteBuffer buffer) {
+        return decode(buffer, false);
+    }
+
+    /**
+     * Reads a block from the buffer's position.
+     * @param buffer the buffer to read from.
+     * @param headerOnly true to leave out the data and transactions, the buffer is then
+     * left somewhere inside the block.
+     * @return Block - the decoded block, not attached to a chain.
+     * @throws IllegalArgumentException if the version is not supported or a length does not fit.
+     * @throws java.nio.BufferUnderflowException if the block is cut short.
+     */
+    static Block decode(ByteBuffer buffer, boolean headerOnly) {
+        byte version = buffer.get();
+        if (version != VERSION && version != VERSION_2 && version != VERSION_1) {
+            throw new IllegalArgumentException("Unsupported block format version " + version);
+        }
+        buffer.position(buffer.position() + BlockHasher.HASH_LENGTH);
+        int index = (int) unzigzag(getVarLong(buffer));
+        Timestamp timestamp = new Timestamp(unzigzag(getVarLong(buffer)));
+        timestamp.setNanos(timestamp.getNanos() + (int) getVarLong(buffer));
+        int difficulty = (int) unzigzag(getVarLong(buffer));
+        int leadingZeroBits = (int) getVarLong(buffer);
+        Target target;
+        if (buffer.get() == COMPACT) {
+            target = Target.ofLeadingZeroBits(leadingZeroBits);
+        } else {
+            byte[] maximum = new byte[BlockHasher.HASH_LENGTH];
+            buffer.get(maximum);
+            target = Target.ofValue(new BigInteger(1, maximum));
+        }
+        long nonce = 0;
+        BigInteger bigNonce = null;
+        if (buffer.get() == COMPACT) {
+            nonce = getVarLong(buffer);
+        } else {
+            byte[] nonceBytes = new byte[checkedLength(buffer, getVarLong(buffer))];
+            buffer.get(nonceBytes);
+            bigNonce = new BigInteger(nonceBytes);
+        }
+        String previousHash;
+        if (buffer.get() == COMPACT) {
+            byte[] raw = new byte[BlockHasher.HASH_LENGTH];
+            buffer.get(raw);
+            previousHash = BlockHasher.toHex(raw);
+        } else {
+            previousHash = getString(buffer);
+        }
+        String data = null;
+        List<String> transactions = null;
+        if (!headerOnly) {
+            data = version == VERSION ? getNullableString(buffer) : getString(buffer);
+            long transactionCount = version == VERSION_1 ? -1 : getVarLong(buffer) - 1;
+            if (transactionCount >= 0) {
+                // every transaction takes at least its length byte.
+                transactions = new ArrayList<>(checkedLength(buffer, transactionCount));
+                for (long i = 0; i < transactionCount; i++) {
+                    transactions.add(getString(buffer));
+                }
+            }
+        }
+
+        Block block;
+        if (transactions == null) {
+            block = new Block(index, timestamp, data, difficulty);
+        } else {
+            block = new Block(index, timestamp, transactions, difficulty);
+            if (!Objects.equals(data, block.getData())) {
+                block.setData(data);
+            }
+        }
+        if (!target.equals(Target.ofHexDigits(difficulty))) {
+            block.setTarget(target);
+        }
+        block.setPreviousHash(previousHash);
+        if (bigNonce == null) {
+            block.setNonce(nonce);
+        } else {
+            block.setNonce(bigNonce);
+        }
+        return block;
+    }
+
+    /**
+     * Reads the hash the sender recorded for an encoded block, without moving the buffer.
+     * @param buffer buffer positioned at an encoded block.
+     * @return String - hex format of the recorded hash.
+     */
+    public static String peekHash(ByteBuffer buffer) {
+        byte[] hash = new byte[BlockHasher.HASH_LENGTH];
+        buffer.duplicate().position(buffer.position() + 1).get(hash);
+        return BlockHasher.toHex(hash);
+    }
+
+    /**
+     * Returns the number of bytes {@link #encode(Block, ByteBuffer)} writes.
+     * @param block the block to measure.
+     * @return int - encoded length in bytes.
+     */
+    public static int encodedLength(Block block) {
+        Timestamp timestamp = block.getTimestamp();
+        int length = 1 + BlockHasher.HASH_LENGTH
+                + varLongLength(zigzag(block.getIndex()))
+                + varLongLength(zigzag(timestamp.getTime()))
+                + varLongLength(timestamp.getNanos() % 1_000_000)
+                + varLongLength(zigzag(block.getDifficulty()))
+                + varLongLength(block.getTarget().getLeadingZeroBits())
+                + 1 + (block.getTarget().getMaximum() == null ? 0 : BlockHasher.HASH_LENGTH)
+                + 1;
+        if (block.hasLongNonce()) {
+            length += varLongLength(block.getLongNonce());
+        } else {
+            int nonceLength = block.getNonce().toByteArray().length;
+            length += varLongLength(nonceLength) + nonceLength;
+        }
+        length += 1;
+        if (rawHash(block.getPreviousHash()) != null) {
+            length += BlockHasher.HASH_LENGTH;
+        } else {
+            length += stringLength(block.getPreviousHash());
+        }
+        String data = block.getData();
+        length += data == null ? 1 : varLongLength(utf8Length(data) + 1L) + utf8Length(data);
+        List<String> transactions = block.getTransactions();
+        length += varLongLength(transactions == null ? 0 : transactions.size() + 1L);
+        if (transactions != null) {
+            for (String transaction : transactions) {
+                length += stringLength(transaction);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns the raw bytes of a lower case hex hash, null for anything else.
+     * Upper case or odd strings are kept as text so that they decode unchanged.
+     * @param hash the candidate hash.
+     * @return byte[] - raw hash or null.
+     */
+    private static byte[] rawHash(String hash) {
+        if (hash.length() != BlockHasher.HASH_LENGTH * 2) {
+            return null;
+        }
+        byte[] raw = BlockHasher.fromHex(hash);
+        if (raw == null || !BlockHasher.toHex(raw).equals(hash)) {
+            return null;
+        }
+        return raw;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        putVarLong(buffer, utf8Length(value));
+        putUtf8(buffer, value);
+    }
+
+    private static void putUtf8(ByteBuffer buffer, String value) {
+        CharsetEncoder encoder = UTF_8.get().reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(value), buffer, true);
+        if (result.isUnderflow()) {
+            result = encoder.flush(buffer);
+        }
+        if (result.isOverflow()) {
+            throw new BufferOverflowException();
+        }
+    }
+
+    /**
+     * Writes a string whose length prefix is one more than its length, 0 for null.
+     */
+    private static void putNullableString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            putVarLong(buffer, 0);
+            return;
+        }
+        putVarLong(buffer, utf8Length(value) + 1L);
+        putUtf8(buffer, value);
+    }
+
+    private static String getNullableString(ByteBuffer buffer) {
+        long lengthPlusOne = getVarLong(buffer);
+        return lengthPlusOne == 0 ? null : getUtf8(buffer, lengthPlusOne - 1);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        return getUtf8(buffer, getVarLong(buffer));
+    }
+
+    private static String getUtf8(ByteBuffer buffer, long encodedLength) {
+        int length = checkedLength(buffer, encodedLength);
+        ByteBuffer bytes = buffer.slice();
+        bytes.limit(length);
+        buffer.position(buffer.position() + length);
+        return StandardCharsets.UTF_8.decode(bytes).toString();
+    }
+
+    /**
+     * Checks a decoded length or count against the bytes left in the buffer.
+     * @param buffer the buffer being decoded.
+     * @param length the decoded length.
+     * @return int - the length.
+     * @throws IllegalArgumentException if the length is negative or more than the bytes left.
+     */
+    private static int checkedLength(ByteBuffer buffer, long length) {
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Length " + length + " exceeds the "
+                    + buffer.remaining() + " bytes left");
+        }
+        return (int) length;
+    }
+
+    private static int stringLength(String value) {
+        int length = utf8Length(value);
+        return varLongLength(length) + length;
+    }
+
+    /**
+     * Counts the UTF-8 bytes of a string without encoding it, a lone surrogate counts
+     * as the one byte it is replaced by.
+     * @param value the string.
+     * @return int - number of UTF-8 bytes.
+     */
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static int varLongLength(long value) {
+        int length = 1;
+        while ((value & ~0x7fL) != 0) {
+            length++;
+            value >>>= 7;
+        }
+        return length;
+    }
+}
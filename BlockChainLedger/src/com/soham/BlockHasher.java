@@ -0,0 +1,239 @@
+package com.soham;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * This class hashes the header of a Block for many nonces without allocating.
+ * The index, timestamp, data and previous hash are encoded once into a byte buffer,
+ * and only the ASCII digits of the nonce (followed by the difficulty and any finer
+ * target, see {@link Target#headerSuffix()}) are rewritten in place between attempts.
+ * The bytes hashed are exactly the UTF-8 bytes of the concatenation used by
+ * {@link Block#calculateHash()}, so the hashes are the same.
+ * An instance must only be used by one thread at a time.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+final class BlockHasher {
+
+    /**
+     * SHA-256 Holder.
+     */
+    private static final String SHA_256 = "SHA-256";
+
+    // number of bytes in a SHA-256 digest.
+    static final int HASH_LENGTH = 32;
+
+    // room left for the nonce digits when the buffer is first allocated.
+    private static final int NONCE_CAPACITY = 24;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // one digest per thread, MessageDigest.getInstance is a provider lookup.
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(SHA_256);
+        } catch (NoSuchAlgorithmException nsa) {
+            throw new IllegalStateException("No such algorithm exception thrown " + nsa, nsa);
+        }
+    });
+
+    // encoded header: prefix, nonce digits, difficulty digits.
+    private byte[] buffer;
+
+    // length of the encoded index, timestamp, data and previous hash.
+    private final int prefixLength;
+
+    // number of ASCII digits the nonce currently takes.
+    private int nonceLength;
+
+    // encoded difficulty and target suffix, written after the nonce.
+    private final byte[] difficultyBytes;
+
+    // reused output of the digest.
+    private final byte[] hash = new byte[HASH_LENGTH];
+
+    /**
+     * Constructor, encodes the header of the block with its current nonce.
+     * @param block the block to hash.
+     */
+    BlockHasher(Block block) {
+        String prefix = block.getIndex() + block.getTimestamp().toString()
+                + block.getData() + block.getPreviousHash();
+        byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+        this.prefixLength = prefixBytes.length;
+        this.difficultyBytes = (block.getDifficulty() + block.getTarget().headerSuffix())
+                .getBytes(StandardCharsets.US_ASCII);
+        this.buffer = new byte[prefixLength + NONCE_CAPACITY + difficultyBytes.length];
+        System.arraycopy(prefixBytes, 0, buffer, 0, prefixLength);
+        if (block.hasLongNonce()) {
+            setNonce(block.getLongNonce());
+        } else {
+            setNonce(block.getNonce());
+        }
+    }
+
+    /**
+     * Writes the digits of the nonce into the buffer without allocating.
+     * @param nonce the nonce to hash with, must not be negative.
+     */
+    void setNonce(long nonce) {
+        if (nonce < 0) {
+            throw new IllegalArgumentException("Nonce must not be negative !!");
+        }
+        int digits = 1;
+        for (long rest = nonce / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        ensureNonceCapacity(digits);
+        long rest = nonce;
+        for (int pos = prefixLength + digits - 1; pos >= prefixLength; pos--) {
+            buffer[pos] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        }
+        nonceLength = digits;
+        writeDifficulty();
+    }
+
+    /**
+     * Writes the digits of the nonce into the buffer.
+     * @param nonce the nonce to hash with, must not be negative.
+     */
+    void setNonce(BigInteger nonce) {
+        if (nonce.signum() < 0) {
+            throw new IllegalArgumentException("Nonce must not be negative !!");
+        }
+        byte[] digits = nonce.toString().getBytes(StandardCharsets.US_ASCII);
+        ensureNonceCapacity(digits.length);
+        System.arraycopy(digits, 0, buffer, prefixLength, digits.length);
+        nonceLength = digits.length;
+        writeDifficulty();
+    }
+
+    /**
+     * Adds delta to the nonce by decimal addition on its digits, in place.
+     * @param delta the amount to add, must not be negative.
+     */
+    void addToNonce(int delta) {
+        int carry = delta;
+        int pos = prefixLength + nonceLength - 1;
+        while (carry != 0 && pos >= prefixLength) {
+            int digit = buffer[pos] - '0' + carry;
+            buffer[pos] = (byte) ('0' + digit % 10);
+            carry = digit / 10;
+            pos--;
+        }
+        if (carry != 0) {
+            // the nonce needs more digits, shift it right to make room at the front.
+            int extra = Integer.toString(carry).length();
+            ensureNonceCapacity(nonceLength + extra);
+            System.arraycopy(buffer, prefixLength, buffer, prefixLength + extra, nonceLength);
+            for (int i = extra - 1; i >= 0; i--) {
+                buffer[prefixLength + i] = (byte) ('0' + carry % 10);
+                carry /= 10;
+            }
+            nonceLength += extra;
+            writeDifficulty();
+        }
+    }
+
+    /**
+     * Returns the nonce currently written in the buffer.
+     * @return BigInteger - the current nonce.
+     */
+    BigInteger getNonce() {
+        return new BigInteger(new String(buffer, prefixLength, nonceLength, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Hashes the header with the current nonce.
+     * @return byte[] - the digest, the same array is reused by the next call.
+     */
+    byte[] digest() {
+        MessageDigest digest = DIGEST.get();
+        digest.update(buffer, 0, prefixLength + nonceLength + difficultyBytes.length);
+        try {
+            digest.digest(hash, 0, HASH_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+        return hash;
+    }
+
+    /**
+     * Hashes the header with the current nonce.
+     * @return String - hex format of SHA265 hash.
+     */
+    String digestHex() {
+        return toHex(digest());
+    }
+
+    /**
+     * Returns this thread's SHA-256 digest, reset and ready for use.
+     * @return MessageDigest - the digest.
+     */
+    static MessageDigest sha256() {
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+        return digest;
+    }
+
+    /**
+     * Converts given hash to hex.
+     * @param hash to convert.
+     * @return string - converted to hex format.
+     */
+    static String toHex(byte[] hash) {
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[hash[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Converts a hex hash back to bytes.
+     * @param hex hash in hex format.
+     * @return byte[] - the raw hash, null if the string is not hex.
+     */
+    static byte[] fromHex(String hex) {
+        if (hex == null || hex.length() % 2 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    /**
+     * Grows the buffer when the nonce would not fit.
+     * @param digits number of nonce digits that must fit.
+     */
+    private void ensureNonceCapacity(int digits) {
+        int needed = prefixLength + digits + difficultyBytes.length;
+        if (needed > buffer.length) {
+            byte[] grown = new byte[needed + NONCE_CAPACITY];
+            System.arraycopy(buffer, 0, grown, 0, prefixLength + nonceLength);
+            buffer = grown;
+        }
+    }
+
+    /**
+     * Writes the difficulty right after the nonce digits.
+     */
+    private void writeDifficulty() {
+        System.arraycopy(difficultyBytes, 0, buffer, prefixLength + nonceLength, difficultyBytes.length);
+    }
+}
@@ -0,0 +1,222 @@
+package com.soham;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * This class indexes the blocks of a chain by hash and by time stamp, so a block is
+ * found by its hash in O(1) and the blocks of a time range in O(log n + k) instead of
+ * scanning the chain. One writer (the chain) keeps it up to date as blocks are added
+ * or repaired; any number of readers query it without locking. The index records the
+ * hash and time stamp a block had when it was added, callers check the block still
+ * has them, since a setter can change a block behind the chain's back. The blocks
+ * of a chain opened from a store are indexed from the store's index file on the first
+ * lookup, so opening a chain does not walk it.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+final class BlockIndex {
+
+    // position of each block by its hash.
+    private final ConcurrentHashMap<HashKey, Integer> byHash = new ConcurrentHashMap<>();
+
+    // positions sorted by time stamp, then by position.
+    private final ConcurrentSkipListSet<TimeKey> byTime = new ConcurrentSkipListSet<>();
+
+    // number of blocks indexed from a store, they come before the blocks added here.
+    private int stored;
+
+    // store the first blocks are still to be indexed from, null once they are.
+    private volatile BlockStore pending;
+
+    // keys each stored block was indexed under, filled when they are indexed.
+    private HashKey[] storedHashKeys = new HashKey[0];
+    private TimeKey[] storedTimeKeys = new TimeKey[0];
+
+    // keys each added position was indexed under, so a replaced block can be taken out. Writer only.
+    private final List<HashKey> hashKeys = new ArrayList<>();
+    private final List<TimeKey> timeKeys = new ArrayList<>();
+
+    /**
+     * Indexes the blocks of a store as the first blocks, reading them from its index
+     * file only when the index is first looked up or a stored block is replaced.
+     * Writer only, before any block is added.
+     * @param store the store.
+     * @param count number of blocks of the store to index.
+     */
+    void addStored(BlockStore store, int count) {
+        if (stored > 0 || !hashKeys.isEmpty()) {
+            throw new IllegalStateException("Stored blocks must be indexed first !!");
+        }
+        stored = count;
+        pending = store;
+    }
+
+    /**
+     * Indexes the stored blocks if that has not happened yet. Any thread.
+     */
+    private void loadStored() {
+        if (pending == null) {
+            return;
+        }
+        synchronized (this) {
+            BlockStore store = pending;
+            if (store == null) {
+                return;
+            }
+            HashKey[] loadedHashKeys = new HashKey[stored];
+            TimeKey[] loadedTimeKeys = new TimeKey[stored];
+            try {
+                store.forEachEntry(stored, (position, hash, epochNanos) -> {
+                    HashKey hashKey = new HashKey(hash);
+                    TimeKey timeKey = new TimeKey(epochNanos, position);
+                    loadedHashKeys[position] = hashKey;
+                    loadedTimeKeys[position] = timeKey;
+                    // a block added since with the same hash keeps its later position.
+                    byHash.putIfAbsent(hashKey, position);
+                    byTime.add(timeKey);
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read the index of the block store", e);
+            }
+            storedHashKeys = loadedHashKeys;
+            storedTimeKeys = loadedTimeKeys;
+            pending = null;
+        }
+    }
+
+    /**
+     * Indexes the block at the next position. Writer only.
+     * @param hash hex hash of the block.
+     * @param timestamp time stamp of the block.
+     */
+    void add(String hash, Timestamp timestamp) {
+        add(HashKey.ofHex(hash), epochNanos(timestamp));
+    }
+
+    /**
+     * Indexes the block at the next position from a raw hash, as read from a block store. Writer only.
+     * @param hash 32 byte raw hash of the block.
+     * @param epochNanos time stamp of the block in nanoseconds since the epoch.
+     */
+    void add(byte[] hash, long epochNanos) {
+        add(new HashKey(hash), epochNanos);
+    }
+
+    private void add(HashKey hashKey, long epochNanos) {
+        int position = stored + hashKeys.size();
+        TimeKey timeKey = new TimeKey(epochNanos, position);
+        hashKeys.add(hashKey);
+        timeKeys.add(timeKey);
+        if (hashKey != null) {
+            byHash.put(hashKey, position);
+        }
+        byTime.add(timeKey);
+    }
+
+    /**
+     * Indexes the block that replaced the one at a position. Writer only.
+     * @param position position of the block.
+     * @param hash hex hash of the new block.
+     * @param timestamp time stamp of the new block.
+     */
+    void replace(int position, String hash, Timestamp timestamp) {
+        if (position < stored) {
+            loadStored();
+        }
+        HashKey oldHashKey = position < stored ? storedHashKeys[position] : hashKeys.get(position - stored);
+        if (oldHashKey != null) {
+            byHash.remove(oldHashKey, position);
+        }
+        byTime.remove(position < stored ? storedTimeKeys[position] : timeKeys.get(position - stored));
+        HashKey hashKey = HashKey.ofHex(hash);
+        TimeKey timeKey = new TimeKey(epochNanos(timestamp), position);
+        if (position < stored) {
+            storedHashKeys[position] = hashKey;
+            storedTimeKeys[position] = timeKey;
+        } else {
+            hashKeys.set(position - stored, hashKey);
+            timeKeys.set(position - stored, timeKey);
+        }
+        if (hashKey != null) {
+            byHash.put(hashKey, position);
+        }
+        byTime.add(timeKey);
+    }
+
+    /**
+     * Position of the block indexed under a hash.
+     * @param hash hex hash.
+     * @return int - position, -1 if no block has that hash.
+     */
+    int positionOf(String hash) {
+        loadStored();
+        HashKey key = HashKey.ofHex(hash);
+        Integer position = key == null ? null : byHash.get(key);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Positions of the blocks indexed with a time stamp in [from, to), in time order.
+     * @param from first time stamp, inclusive.
+     * @param to last time stamp, exclusive.
+     * @return List - positions.
+     */
+    List<Integer> positionsBetween(Timestamp from, Timestamp to) {
+        loadStored();
+        List<Integer> positions = new ArrayList<>();
+        long fromNanos = epochNanos(from);
+        long toNanos = epochNanos(to);
+        if (fromNanos >= toNanos) {
+            return positions;
+        }
+        for (TimeKey key : byTime.subSet(new TimeKey(fromNanos, Integer.MIN_VALUE),
+                new TimeKey(toNanos, Integer.MIN_VALUE))) {
+            positions.add(key.position);
+        }
+        return positions;
+    }
+
+    /**
+     * Nanoseconds since the epoch, exact for time stamps up to the year 2262.
+     */
+    static long epochNanos(Timestamp timestamp) {
+        return Math.floorDiv(timestamp.getTime(), 1000) * 1_000_000_000L + timestamp.getNanos();
+    }
+
+    /**
+     * A time stamp index entry, ordered by time and then position.
+     */
+    private static final class TimeKey implements Comparable<TimeKey> {
+
+        private final long epochNanos;
+        private final int position;
+
+        TimeKey(long epochNanos, int position) {
+            this.epochNanos = epochNanos;
+            this.position = position;
+        }
+
+        @Override
+        public int compareTo(TimeKey other) {
+            int byNanos = Long.compare(epochNanos, other.epochNanos);
+            return byNanos != 0 ? byNanos : Integer.compare(position, other.position);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof TimeKey && compareTo((TimeKey) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(epochNanos) * 31 + position;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.soham;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * This class is the append-only list of blocks behind a BlockChain.
+ * One writer appends (and replaces repaired blocks) while any number of readers
+ * read without locking. Blocks live in fixed size chunks that are never copied,
+ * and the size is published with a volatile write after the block is stored, so
+ * a reader that sees size n also sees blocks 0..n-1.
+ * Blocks of a chain read from a store can be published without being loaded,
+ * the first reader of such a position loads it.
+ * Only one thread may call {@link #add(Block)}, {@link #addUnloaded(int)} or
+ * {@link #set(int, Block)} at a time.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+final class BlockList {
+
+    // blocks per chunk, a power of two so positions split with shifts.
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // the chunks, replaced (not changed) when more chunks are needed.
+    private volatile AtomicReferenceArray<Block>[] chunks;
+
+    // number of published blocks.
+    private volatile int size;
+
+    // loads a published block that is not in memory yet, null if every block is added loaded.
+    private final IntFunction<Block> loader;
+
+    /**
+     * Constructor.
+     */
+    BlockList() {
+        this(null);
+    }
+
+    /**
+     * Constructor.
+     * @param loader loads the blocks published by {@link #addUnloaded(int)}.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    BlockList(IntFunction<Block> loader) {
+        this.loader = loader;
+        chunks = new AtomicReferenceArray[] {new AtomicReferenceArray<Block>(CHUNK_SIZE)};
+    }
+
+    /**
+     * Returns the number of published blocks.
+     * @return int - size.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns a published block.
+     * @param position position of the block.
+     * @return Block - the block.
+     */
+    Block get(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("No block " + position + " in a chain of " + size);
+        }
+        AtomicReferenceArray<Block> chunk = chunks[position >>> CHUNK_BITS];
+        Block block = chunk.get(position & CHUNK_MASK);
+        if (block == null && loader != null) {
+            // readers racing to load the same block all end up with the first one stored.
+            Block loaded = loader.apply(position);
+            Block stored = chunk.compareAndExchange(position & CHUNK_MASK, null, loaded);
+            block = stored == null ? loaded : stored;
+        }
+        return block;
+    }
+
+    /**
+     * Appends a block and publishes it. Writer only.
+     * @param block the fully built block.
+     */
+    void add(Block block) {
+        store(size, block);
+        size = size + 1;
+    }
+
+    /**
+     * Publishes the next blocks without loading them, {@link #get(int)} loads each
+     * on first use. Writer only.
+     * @param count number of blocks to publish.
+     */
+    void addUnloaded(int count) {
+        int newSize = size + count;
+        // new chunks start out empty, only the chunks need to exist.
+        for (int position = size; position < newSize; position = (position | CHUNK_MASK) + 1) {
+            store(position, null);
+        }
+        size = newSize;
+    }
+
+    /**
+     * Stores a block at a position, growing the chunks as needed, without publishing it.
+     */
+    private void store(int position, Block block) {
+        int chunk = position >>> CHUNK_BITS;
+        AtomicReferenceArray<Block>[] current = chunks;
+        if (chunk == current.length) {
+            AtomicReferenceArray<Block>[] grown = Arrays.copyOf(current, current.length * 2);
+            current = grown;
+            chunks = grown;
+        }
+        if (current[chunk] == null) {
+            current[chunk] = new AtomicReferenceArray<>(CHUNK_SIZE);
+            // publish the new chunk before any block in it becomes visible.
+            chunks = current;
+        }
+        current[chunk].set(position & CHUNK_MASK, block);
+    }
+
+    /**
+     * Replaces a published block, readers see either the old or the new block. Writer only.
+     * @param position position of the block.
+     * @param block the fully built replacement.
+     */
+    void set(int position, Block block) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("No block " + position + " in a chain of " + size);
+        }
+        chunks[position >>> CHUNK_BITS].set(position & CHUNK_MASK, block);
+    }
+}
@@ -0,0 +1,396 @@
+package com.soham;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * This class is an append-only on-disk store of mined blocks.
+ * Blocks are written as binary records to a segment file, each record being
+ * [int payload length][int CRC32 of payload][payload] with the payload in the
+ * {@link BlockCodec} format. For every record an entry of
+ * [long record offset][32 byte hash][long time stamp epoch nanos] is written to an
+ * index file. Opening a store reads nothing but the records after the last index entry:
+ * the offset of a record is read from the index when the record is, the hashes and time
+ * stamps are mapped from it when first looked up, and blocks are decoded when first used.
+ * A partially written tail record left by a crash is truncated when the store is opened.
+ * Appends reach the operating system at once but the storage device only on
+ * {@link #flush()}, which a chain calls at every checkpoint and when it is closed, so a
+ * power failure can lose the blocks appended since; the recovery scan then reopens the
+ * store at the last complete record that made it to the device.
+ * The latest {@link Checkpoint} is kept next to the blocks, and the records of the blocks
+ * before it are the cold storage their dropped payloads are read back from.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class BlockStore implements Closeable {
+
+    // name of the file holding the block records.
+    static final String SEGMENT_FILE = "blocks.seg";
+
+    // name of the file holding one index entry per block.
+    static final String INDEX_FILE = "blocks.idx";
+
+    // name of the file holding the latest checkpoint.
+    static final String CHECKPOINT_FILE = "checkpoint";
+
+    // length and CRC in front of every record.
+    private static final int RECORD_HEADER = Integer.BYTES * 2;
+
+    // offset, hash and time stamp of a block in the index file.
+    private static final int ENTRY = Long.BYTES + BlockHasher.HASH_LENGTH + Long.BYTES;
+
+    // index entries mapped at a time, a mapping cannot pass 2 GB.
+    private static final int ENTRIES_PER_MAP = 1 << 20;
+
+    // largest record accepted when scanning, anything longer is treated as garbage.
+    private static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+
+    // directory holding the files.
+    private final Path directory;
+
+    private final FileChannel segment;
+    private final FileChannel index;
+
+    // number of blocks in the store.
+    private int count;
+
+    // end of the last complete record.
+    private long segmentEnd;
+
+    /**
+     * Told about the hash and time stamp of each block in the index.
+     */
+    interface EntryVisitor {
+
+        /**
+         * Visits one entry.
+         * @param position position of the block.
+         * @param hash 32 byte raw hash, the array is reused for the next entry.
+         * @param epochNanos time stamp of the block in nanoseconds since the epoch.
+         */
+        void visit(int position, byte[] hash, long epochNanos);
+    }
+
+    /**
+     * Opens (or creates) the store in the given directory and recovers from a crash
+     * that left a partial record at the end.
+     * @param directory directory holding the segment and index files.
+     * @throws IOException if the files cannot be opened.
+     */
+    public BlockStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        segment = FileChannel.open(directory.resolve(SEGMENT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(directory.resolve(INDEX_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // a torn write can leave a partial entry at the end, ignore it.
+        count = (int) (index.size() / ENTRY);
+        recover();
+    }
+
+    /**
+     * Drops index entries whose record is incomplete, indexes complete records that
+     * were written after the last index entry, and truncates whatever is left.
+     * @throws IOException if the files cannot be read or truncated.
+     */
+    private void recover() throws IOException {
+        // walk back over index entries pointing at records that did not make it to disk.
+        segmentEnd = 0;
+        while (count > 0) {
+            long offset = offsetOf(count - 1);
+            int length = recordLength(offset);
+            if (length > 0) {
+                segmentEnd = offset + length;
+                break;
+            }
+            count--;
+        }
+        index.truncate((long) count * ENTRY);
+        // index records that were written before a crash prevented their index entry.
+        int length;
+        while ((length = recordLength(segmentEnd)) > 0) {
+            ByteBuffer payload = readPayload(segmentEnd, length - RECORD_HEADER);
+            Block block = BlockCodec.decode(payload.duplicate());
+            writeEntry(count, segmentEnd, hashOf(payload), BlockIndex.epochNanos(block.getTimestamp()));
+            count++;
+            segmentEnd += length;
+        }
+        segment.truncate(segmentEnd);
+    }
+
+    /**
+     * Returns the total length of a valid record at the offset.
+     * @param offset position of the record in the segment.
+     * @return int - header plus payload length, -1 if the record is partial or corrupt.
+     * @throws IOException if the segment cannot be read.
+     */
+    private int recordLength(long offset) throws IOException {
+        if (offset < 0 || offset + RECORD_HEADER > segment.size()) {
+            return -1;
+        }
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        readFully(segment, header, offset);
+        int payloadLength = header.getInt(0);
+        int crc = header.getInt(Integer.BYTES);
+        if (payloadLength <= 0 || payloadLength > MAX_RECORD_LENGTH
+                || offset + RECORD_HEADER + payloadLength > segment.size()) {
+            return -1;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+        readFully(segment, payload, offset + RECORD_HEADER);
+        if (crcOf(payload.array()) != crc) {
+            return -1;
+        }
+        return RECORD_HEADER + payloadLength;
+    }
+
+    /**
+     * Returns the number of blocks in the store.
+     * @return int - number of blocks.
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Appends a mined block. The record is written before its index entry, so a crash
+     * in between is repaired by the recovery scan. Nothing is counted until both are
+     * written, so a failed append leaves the store as it was.
+     * @param position position of the block, the number of blocks in the store.
+     * @param block the block to write, with its hash known.
+     * @throws IOException if the block cannot be written.
+     * @throws IllegalStateException if the store does not hold exactly the blocks before the position.
+     */
+    public synchronized void append(int position, Block block) throws IOException {
+        if (position != count) {
+            throw new IllegalStateException("Cannot append block " + position + " to a store of " + count + " !!");
+        }
+        ByteBuffer payload = BlockCodec.encode(block);
+        byte[] hash = hashOf(payload);
+        int payloadLength = payload.remaining();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + payloadLength);
+        record.putInt(payloadLength).putInt(crcOf(payload.array())).put(payload).flip();
+        long offset = segmentEnd;
+        try {
+            while (record.hasRemaining()) {
+                segment.write(record, offset + record.position());
+            }
+            writeEntry(position, offset, hash, BlockIndex.epochNanos(block.getTimestamp()));
+        } catch (IOException e) {
+            // drop whatever part of the record made it, the next append starts at the same offset.
+            try {
+                segment.truncate(segmentEnd);
+                index.truncate((long) count * ENTRY);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        segmentEnd += RECORD_HEADER + payloadLength;
+        count++;
+    }
+
+    /**
+     * Reads a block.
+     * @param position position of the block in the store.
+     * @return Block - the decoded block, its hash is computed again on first use.
+     * @throws IOException if the block cannot be read.
+     */
+    public synchronized Block read(int position) throws IOException {
+        return BlockCodec.decode(readPayload(position));
+    }
+
+    /**
+     * Reads only the header of a block, its payload stays on disk.
+     * @param position position of the block in the store.
+     * @return Block - a header only block with the stored hash.
+     * @throws IOException if the block cannot be read.
+     */
+    public synchronized Block readHeader(int position) throws IOException {
+        ByteBuffer payload = readPayload(position);
+        String hash = BlockCodec.peekHash(payload);
+        Block block = BlockCodec.decode(payload, true);
+        block.recordHash(hash);
+        return block.header();
+    }
+
+    /**
+     * Replaces the stored checkpoint. The new one is written to a temporary file
+     * first, so a crash leaves either the old or the new checkpoint.
+     * @param checkpoint the checkpoint.
+     * @throws IOException if the checkpoint cannot be written.
+     */
+    public synchronized void writeCheckpoint(Checkpoint checkpoint) throws IOException {
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(checkpoint.encode());
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the stored checkpoint, without checking its signature.
+     * @return Checkpoint - the latest checkpoint, null if there is none.
+     * @throws IOException if the checkpoint cannot be read.
+     */
+    public synchronized Checkpoint readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        return Checkpoint.decode(Files.readAllBytes(file));
+    }
+
+    /**
+     * Returns the hash stored with a block, read from the index without touching its record.
+     * @param position position of the block in the store.
+     * @return String - hex format of the stored hash.
+     * @throws IOException if the hash cannot be read.
+     */
+    public synchronized String readHash(int position) throws IOException {
+        checkPosition(position);
+        ByteBuffer hash = ByteBuffer.allocate(BlockHasher.HASH_LENGTH);
+        readFully(index, hash, (long) position * ENTRY + Long.BYTES);
+        return BlockHasher.toHex(hash.array());
+    }
+
+    /**
+     * Walks the hashes and time stamps of the first blocks in order, from the mapped index alone.
+     * @param limit number of blocks to walk, at most the store's size.
+     * @param visitor told about each entry.
+     * @throws IOException if the index cannot be read.
+     */
+    synchronized void forEachEntry(int limit, EntryVisitor visitor) throws IOException {
+        byte[] hash = new byte[BlockHasher.HASH_LENGTH];
+        int end = Math.min(limit, count);
+        for (int from = 0; from < end; from += ENTRIES_PER_MAP) {
+            int to = Math.min(end, from + ENTRIES_PER_MAP);
+            MappedByteBuffer mapped = index.map(FileChannel.MapMode.READ_ONLY,
+                    (long) from * ENTRY, (long) (to - from) * ENTRY);
+            for (int i = from; i < to; i++) {
+                mapped.position((i - from) * ENTRY + Long.BYTES);
+                mapped.get(hash);
+                visitor.visit(i, hash, mapped.getLong());
+            }
+        }
+    }
+
+    /**
+     * Drops every block from the given position on, used when the tail of a chain
+     * was mined again.
+     * @param newSize number of blocks to keep, the store's size keeps every block.
+     * @throws IOException if the files cannot be truncated.
+     * @throws IllegalStateException if the store has fewer blocks than that.
+     */
+    public synchronized void truncate(int newSize) throws IOException {
+        if (newSize < 0 || newSize > count) {
+            throw new IllegalStateException("Cannot keep " + newSize + " blocks of a store of " + count + " !!");
+        }
+        if (newSize == count) {
+            return;
+        }
+        segmentEnd = offsetOf(newSize);
+        count = newSize;
+        segment.truncate(segmentEnd);
+        index.truncate((long) count * ENTRY);
+    }
+
+    /**
+     * Forces written blocks to the storage device.
+     * @throws IOException if the files cannot be synced.
+     */
+    public synchronized void flush() throws IOException {
+        segment.force(false);
+        index.force(false);
+    }
+
+    /**
+     * Closes the files.
+     * @throws IOException if the files cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            segment.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= count) {
+            throw new IndexOutOfBoundsException("No block " + position + " in a store of " + count);
+        }
+    }
+
+    private ByteBuffer readPayload(int position) throws IOException {
+        checkPosition(position);
+        long offset = offsetOf(position);
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        readFully(segment, header, offset);
+        return readPayload(offset, header.getInt(0));
+    }
+
+    private ByteBuffer readPayload(long offset, int length) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(segment, payload, offset + RECORD_HEADER);
+        return payload.flip();
+    }
+
+    /**
+     * The offset of a record, read from its index entry.
+     */
+    private long offsetOf(int position) throws IOException {
+        ByteBuffer offset = ByteBuffer.allocate(Long.BYTES);
+        readFully(index, offset, (long) position * ENTRY);
+        return offset.getLong(0);
+    }
+
+    private void writeEntry(int position, long offset, byte[] hash, long epochNanos) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY);
+        entry.putLong(offset).put(hash).putLong(epochNanos).flip();
+        long at = (long) position * ENTRY;
+        while (entry.hasRemaining()) {
+            index.write(entry, at + entry.position());
+        }
+    }
+
+    /**
+     * The raw hash of an encoded block, it follows the version byte.
+     */
+    private static byte[] hashOf(ByteBuffer payload) {
+        byte[] hash = new byte[BlockHasher.HASH_LENGTH];
+        payload.duplicate().position(payload.position() + 1).get(hash);
+        return hash;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of a store file");
+            }
+        }
+    }
+
+    private static int crcOf(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+}
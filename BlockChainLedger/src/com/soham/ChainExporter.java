@@ -0,0 +1,132 @@
+package com.soham;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONObject;
+
+/**
+ * This class streams a BlockChain as JSON one block at a time, so exporting a
+ * long chain never holds more than one block's JSON in memory. It writes the same
+ * {"ds_chain":[...],"chainHash":"..."} document as {@link BlockChain#toString()},
+ * a range of blocks for paging, or NDJSON with one block per line.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public final class ChainExporter {
+
+    private ChainExporter() {
+    }
+
+    /**
+     * Writes the whole chain document.
+     * @param chain the chain to export.
+     * @param out where to write, not closed.
+     * @throws IOException if writing fails.
+     */
+    public static void writeJson(BlockChain chain, Writer out) throws IOException {
+        ChainSnapshot snapshot = chain.snapshot();
+        writeJson(snapshot, out, 0, snapshot.getSize());
+    }
+
+    /**
+     * Writes the chain document for blocks from..to-1. A partial range also
+     * carries "from" and "to" so that pages can be put back together.
+     * @param chain the chain to export.
+     * @param out where to write, not closed.
+     * @param from first block, inclusive.
+     * @param to last block, exclusive.
+     * @throws IOException if writing fails.
+     */
+    public static void writeJson(BlockChain chain, Writer out, int from, int to) throws IOException {
+        writeJson(chain.snapshot(), out, from, to);
+    }
+
+    /**
+     * Writes from one snapshot, so blocks added while writing are left out and the
+     * chain hash always belongs to the snapshot's last block.
+     */
+    private static void writeJson(ChainSnapshot snapshot, Writer out, int from, int to) throws IOException {
+        int size = snapshot.getSize();
+        checkRange(from, to, size);
+        out.write("{\"ds_chain\":[");
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                out.write(',');
+            }
+            writeBlock(snapshot.getBlock(i), out);
+        }
+        out.write("],\"chainHash\":");
+        out.write(JSONObject.quote(snapshot.getChainHash()));
+        if (from != 0 || to != size) {
+            out.write(",\"from\":" + from + ",\"to\":" + to);
+        }
+        out.write('}');
+        out.flush();
+    }
+
+    /**
+     * Writes blocks from..to-1 as NDJSON, one block object per line.
+     * @param chain the chain to export.
+     * @param out where to write, not closed.
+     * @param from first block, inclusive.
+     * @param to last block, exclusive.
+     * @throws IOException if writing fails.
+     */
+    public static void writeNdjson(BlockChain chain, Writer out, int from, int to) throws IOException {
+        ChainSnapshot snapshot = chain.snapshot();
+        checkRange(from, to, snapshot.getSize());
+        for (int i = from; i < to; i++) {
+            writeBlock(snapshot.getBlock(i), out);
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the whole chain document as UTF-8.
+     * @param chain the chain to export.
+     * @param out where to write, flushed but not closed.
+     * @throws IOException if writing fails.
+     */
+    public static void writeJson(BlockChain chain, OutputStream out) throws IOException {
+        writeJson(chain, utf8Writer(out));
+    }
+
+    /**
+     * Writes blocks from..to-1 as UTF-8 NDJSON.
+     * @param chain the chain to export.
+     * @param out where to write, flushed but not closed.
+     * @param from first block, inclusive.
+     * @param to last block, exclusive.
+     * @throws IOException if writing fails.
+     */
+    public static void writeNdjson(BlockChain chain, OutputStream out, int from, int to) throws IOException {
+        writeNdjson(chain, utf8Writer(out), from, to);
+    }
+
+    /**
+     * Writes one block the way JSONObject renders it inside the ds_chain array.
+     * @param block the block.
+     * @param out where to write.
+     * @throws IOException if writing fails.
+     */
+    private static void writeBlock(Block block, Writer out) throws IOException {
+        new JSONObject(block).write(out);
+    }
+
+    private static Writer utf8Writer(OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    private static void checkRange(int from, int to, int size) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range " + from + ".." + to + " outside chain of " + size);
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.soham;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.json.JSONObject;
+
+/**
+ * This class collects the metrics of a BlockChain: hashes attempted, nonce attempts
+ * and mining latency per block, validation and repair durations, blocks per second
+ * over the last RATE_WINDOW_SECONDS, so it drops to 0 when mining stops, and the
+ * depth of the queue in front of the chain. Miners count hashes in a local
+ * variable and add them here once every HASH_FLUSH_INTERVAL attempts, so the proof
+ * of work loop itself touches no shared state. Metrics can be read here, over JMX
+ * after {@link #registerMBean(String)}, or pushed to {@link MetricsListener}s.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class ChainMetrics implements ChainMetricsMBean {
+
+    // attempts a miner counts locally before adding them to the shared counter.
+    static final int HASH_FLUSH_INTERVAL = 1 << 14;
+
+    // blocks per second counts the blocks mined in this many one second buckets.
+    static final int RATE_WINDOW_SECONDS = 10;
+
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final LongAdder hashesAttempted = new LongAdder();
+    private final LongAdder blocksMined = new LongAdder();
+
+    // blocks mined again by repairs, kept out of blocks mined and blocks per second.
+    private final LongAdder blocksReMined = new LongAdder();
+
+    // hashes tried per mined block.
+    private final Histogram nonceAttempts = new Histogram();
+
+    // in nanoseconds.
+    private final Histogram miningLatency = new Histogram();
+    private final Histogram validationTime = new Histogram();
+    private final Histogram repairTime = new Histogram();
+
+    private final List<MetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+    // when these metrics started, the rate buckets count seconds from here.
+    private final long startNanos = System.nanoTime();
+
+    // blocks mined in each second of the rate window, a ring indexed by second, and the
+    // second each bucket is counting, a bucket left over from an older second counts 0.
+    private final long[] rateBuckets = new long[RATE_WINDOW_SECONDS];
+    private final long[] rateBucketSeconds = new long[RATE_WINDOW_SECONDS];
+
+    // depth of the queue feeding the chain, if there is one.
+    private volatile IntSupplier queueDepth = () -> 0;
+
+    /**
+     * Adds a batch of hashes tried by a miner.
+     * @param hashes number of hashes.
+     */
+    void addHashes(long hashes) {
+        hashesAttempted.add(hashes);
+    }
+
+    /**
+     * Records a mined block, its hashes were already added by the miner.
+     * @param block the block.
+     * @param attempts hashes tried for it.
+     * @param nanos mining time.
+     */
+    void blockMined(Block block, long attempts, long nanos) {
+        blocksMined.increment();
+        recordRate(System.nanoTime());
+        nonceAttempts.record(attempts);
+        miningLatency.record(nanos);
+        for (MetricsListener listener : listeners) {
+            listener.blockMined(block, attempts, nanos);
+        }
+    }
+
+    /**
+     * Counts a mined block in the bucket of the current second.
+     * @param nowNanos the current System.nanoTime().
+     */
+    private synchronized void recordRate(long nowNanos) {
+        long second = (nowNanos - startNanos) / NANOS_PER_SECOND;
+        int bucket = (int) (second % RATE_WINDOW_SECONDS);
+        if (rateBucketSeconds[bucket] != second) {
+            rateBucketSeconds[bucket] = second;
+            rateBuckets[bucket] = 0;
+        }
+        rateBuckets[bucket]++;
+    }
+
+    /**
+     * Blocks per second over the window ending now: the current, partial, second and
+     * the RATE_WINDOW_SECONDS - 1 before it, or the time since the start if shorter.
+     * @param nowNanos the current System.nanoTime().
+     */
+    private synchronized double rateAt(long nowNanos) {
+        long elapsed = nowNanos - startNanos;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        long second = elapsed / NANOS_PER_SECOND;
+        long blocks = 0;
+        for (int i = 0; i < RATE_WINDOW_SECONDS; i++) {
+            if (rateBucketSeconds[i] > second - RATE_WINDOW_SECONDS && rateBucketSeconds[i] <= second) {
+                blocks += rateBuckets[i];
+            }
+        }
+        long windowStart = Math.max(0, second - RATE_WINDOW_SECONDS + 1) * NANOS_PER_SECOND;
+        return blocks * (double) NANOS_PER_SECOND / (elapsed - windowStart);
+    }
+
+    /**
+     * Records a block mined again by a repair, its hashes were already added by the miner.
+     */
+    void blockReMined() {
+        blocksReMined.increment();
+    }
+
+    /**
+     * Records a validation.
+     * @param firstInvalidBlock its result.
+     * @param nanos its duration.
+     */
+    void chainValidated(int firstInvalidBlock, long nanos) {
+        validationTime.record(nanos);
+        for (MetricsListener listener : listeners) {
+            listener.chainValidated(firstInvalidBlock, nanos);
+        }
+    }
+
+    /**
+     * Records a repair.
+     * @param report its result.
+     * @param nanos its duration.
+     */
+    void chainRepaired(RepairReport report, long nanos) {
+        repairTime.record(nanos);
+        for (MetricsListener listener : listeners) {
+            listener.chainRepaired(report, nanos);
+        }
+    }
+
+    /**
+     * Adds a listener.
+     * @param listener the listener.
+     */
+    public void addListener(MetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     * @param listener the listener.
+     */
+    public void removeListener(MetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * setter for the queue depth gauge, read whenever the queue depth is asked for.
+     * @param queueDepth
+     */
+    public void setQueueDepth(IntSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as
+     * com.soham:type=ChainMetrics,name=the given name.
+     * @param name name of the chain.
+     * @return ObjectName - the registered name.
+     * @throws IllegalStateException if the registration fails.
+     */
+    public ObjectName registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName("com.soham:type=ChainMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register the chain metrics !!", e);
+        }
+    }
+
+    /**
+     * getter for the nonce attempts histogram.
+     * @return
+     */
+    public Histogram getNonceAttempts() {
+        return nonceAttempts;
+    }
+
+    /**
+     * getter for the mining latency histogram, in nanoseconds.
+     * @return
+     */
+    public Histogram getMiningLatency() {
+        return miningLatency;
+    }
+
+    /**
+     * getter for the validation time histogram, in nanoseconds.
+     * @return
+     */
+    public Histogram getValidationTime() {
+        return validationTime;
+    }
+
+    /**
+     * getter for the repair time histogram, in nanoseconds.
+     * @return
+     */
+    public Histogram getRepairTime() {
+        return repairTime;
+    }
+
+    @Override
+    public long getHashesAttempted() {
+        return hashesAttempted.sum();
+    }
+
+    @Override
+    public long getBlocksMined() {
+        return blocksMined.sum();
+    }
+
+    @Override
+    public double getBlocksPerSecond() {
+        return rateAt(System.nanoTime());
+    }
+
+    @Override
+    public long getNonceAttemptsP50() {
+        return nonceAttempts.getPercentile(50);
+    }
+
+    @Override
+    public long getNonceAttemptsP99() {
+        return nonceAttempts.getPercentile(99);
+    }
+
+    @Override
+    public long getNonceAttemptsMax() {
+        return nonceAttempts.getMax();
+    }
+
+    @Override
+    public double getMiningLatencyP50Millis() {
+        return miningLatency.getPercentile(50) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMiningLatencyP99Millis() {
+        return miningLatency.getPercentile(99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMiningLatencyMaxMillis() {
+        return miningLatency.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getValidations() {
+        return validationTime.getCount();
+    }
+
+    @Override
+    public double getValidationP50Millis() {
+        return validationTime.getPercentile(50) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getValidationP99Millis() {
+        return validationTime.getPercentile(99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getValidationMaxMillis() {
+        return validationTime.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getRepairs() {
+        return repairTime.getCount();
+    }
+
+    @Override
+    public long getBlocksReMined() {
+        return blocksReMined.sum();
+    }
+
+    @Override
+    public double getRepairP50Millis() {
+        return repairTime.getPercentile(50) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getRepairMaxMillis() {
+        return repairTime.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    /**
+     * Returns a JSON string.
+     * @return String - in JSON format.
+     */
+    @Override
+    public String toString() {
+        JSONObject json = new JSONObject();
+        json.put("hashes attempted", getHashesAttempted());
+        json.put("blocks mined", getBlocksMined());
+        json.put("blocks per second", getBlocksPerSecond());
+        json.put("nonce attempts p50", getNonceAttemptsP50());
+        json.put("nonce attempts p99", getNonceAttemptsP99());
+        json.put("nonce attempts max", getNonceAttemptsMax());
+        json.put("mining millis p50", getMiningLatencyP50Millis());
+        json.put("mining millis p99", getMiningLatencyP99Millis());
+        json.put("mining millis max", getMiningLatencyMaxMillis());
+        json.put("validations", getValidations());
+        json.put("validation millis p50", getValidationP50Millis());
+        json.put("validation millis p99", getValidationP99Millis());
+        json.put("validation millis max", getValidationMaxMillis());
+        json.put("repairs", getRepairs());
+        json.put("blocks re-mined", getBlocksReMined());
+        json.put("repair millis p50", getRepairP50Millis());
+        json.put("repair millis max", getRepairMaxMillis());
+        json.put("queue depth", getQueueDepth());
+        return json.toString();
+    }
+}
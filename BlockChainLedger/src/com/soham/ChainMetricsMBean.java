@@ -0,0 +1,46 @@
+package com.soham;
+
+/**
+ * This interface is the JMX view of {@link ChainMetrics}. Times are in milliseconds.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public interface ChainMetricsMBean {
+
+    long getHashesAttempted();
+
+    long getBlocksMined();
+
+    double getBlocksPerSecond();
+
+    long getNonceAttemptsP50();
+
+    long getNonceAttemptsP99();
+
+    long getNonceAttemptsMax();
+
+    double getMiningLatencyP50Millis();
+
+    double getMiningLatencyP99Millis();
+
+    double getMiningLatencyMaxMillis();
+
+    long getValidations();
+
+    double getValidationP50Millis();
+
+    double getValidationP99Millis();
+
+    double getValidationMaxMillis();
+
+    long getRepairs();
+
+    long getBlocksReMined();
+
+    double getRepairP50Millis();
+
+    double getRepairMaxMillis();
+
+    int getQueueDepth();
+}
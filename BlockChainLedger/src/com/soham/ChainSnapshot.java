@@ -0,0 +1,78 @@
+package com.soham;
+
+/**
+ * This class is a consistent, copy-free view of a BlockChain at one point in time:
+ * its size, its chain hash and its latest block. Blocks are read from the chain's
+ * append-only list, which only grows, so taking a snapshot costs one volatile read
+ * and never locks. The chain publishes a new snapshot after each block is fully mined.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public final class ChainSnapshot {
+
+    // the chain's block list, shared and never copied.
+    private final BlockList blocks;
+
+    // number of blocks in this snapshot.
+    private final int size;
+
+    // hash of the latest block in this snapshot.
+    private final String chainHash;
+
+    // the latest block in this snapshot, null when empty.
+    private final Block latestBlock;
+
+    /**
+     * Constructor.
+     * @param blocks
+     * @param size
+     * @param chainHash
+     * @param latestBlock
+     */
+    ChainSnapshot(BlockList blocks, int size, String chainHash, Block latestBlock) {
+        this.blocks = blocks;
+        this.size = size;
+        this.chainHash = chainHash;
+        this.latestBlock = latestBlock;
+    }
+
+    /**
+     * getter for the size field.
+     * @return
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * getter for the chain hash field.
+     * @return
+     */
+    public String getChainHash() {
+        return chainHash;
+    }
+
+    /**
+     * Returns the latest block of this snapshot.
+     * @return Block - the latest block.
+     */
+    public Block getLatestBlock() {
+        if (latestBlock == null) {
+            throw new NullPointerException("Block chain is Empty !!");
+        }
+        return latestBlock;
+    }
+
+    /**
+     * Returns a block of this snapshot.
+     * @param position position of the block, less than the snapshot size.
+     * @return Block - the block.
+     */
+    public Block getBlock(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("No block " + position + " in a snapshot of " + size);
+        }
+        return blocks.get(position);
+    }
+}
@@ -0,0 +1,183 @@
+package com.soham;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Base64;
+
+import org.json.JSONObject;
+
+/**
+ * This class is a signed statement that a block, and so every block before it, is
+ * trusted. The signature covers the position and hash of the block and the time the
+ * checkpoint was made. Blocks before a checkpoint keep only their header in memory,
+ * and validation starts after the checkpoint instead of at the genesis block.
+ * Ed25519, EC and RSA keys are supported.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class Checkpoint {
+
+    // position of the trusted block.
+    private final int index;
+
+    // hex hash of the trusted block.
+    private final String hash;
+
+    // when the checkpoint was made, in epoch millis.
+    private final long createdMillis;
+
+    // signature over index, hash and creation time.
+    private final byte[] signature;
+
+    private Checkpoint(int index, String hash, long createdMillis, byte[] signature) {
+        this.index = index;
+        this.hash = hash;
+        this.createdMillis = createdMillis;
+        this.signature = signature;
+    }
+
+    /**
+     * Signs a checkpoint for a block.
+     * @param index position of the block.
+     * @param hash hex hash of the block.
+     * @param signer private key to sign with.
+     * @return Checkpoint - the signed checkpoint.
+     * @throws IllegalArgumentException if the key cannot sign.
+     */
+    public static Checkpoint sign(int index, String hash, PrivateKey signer) {
+        long createdMillis = System.currentTimeMillis();
+        try {
+            Signature signing = Signature.getInstance(algorithmFor(signer));
+            signing.initSign(signer);
+            signing.update(signedBytes(index, hash, createdMillis));
+            return new Checkpoint(index, hash, createdMillis, signing.sign());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Cannot sign a checkpoint with this key !!", e);
+        }
+    }
+
+    /**
+     * Checks the signature.
+     * @param trusted public key of the signer.
+     * @return boolean - true if the trusted key signed this checkpoint.
+     * @throws IllegalArgumentException if the key cannot verify signatures.
+     */
+    public boolean verify(PublicKey trusted) {
+        try {
+            Signature verifying = Signature.getInstance(algorithmFor(trusted));
+            verifying.initVerify(trusted);
+            verifying.update(signedBytes(index, hash, createdMillis));
+            return verifying.verify(signature);
+        } catch (SignatureException e) {
+            // a malformed signature does not verify.
+            return false;
+        } catch (InvalidKeyException e) {
+            throw new IllegalArgumentException("Cannot verify a checkpoint with this key !!", e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Unsupported key algorithm " + trusted.getAlgorithm(), e);
+        }
+    }
+
+    /**
+     * getter for the index field.
+     * @return
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * getter for the hash field.
+     * @return
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * getter for the created millis field.
+     * @return
+     */
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    /**
+     * Encodes the checkpoint as
+     * [int index][long created millis][int length][UTF-8 hash][int length][signature].
+     * @return byte[] - the encoded checkpoint.
+     */
+    byte[] encode() {
+        byte[] hashBytes = hash.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + Long.BYTES
+                + Integer.BYTES + hashBytes.length + Integer.BYTES + signature.length);
+        buffer.putInt(index).putLong(createdMillis)
+                .putInt(hashBytes.length).put(hashBytes)
+                .putInt(signature.length).put(signature);
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a checkpoint written by {@link #encode()}, without checking its signature.
+     * @param bytes the encoded checkpoint.
+     * @return Checkpoint - the checkpoint.
+     * @throws IllegalArgumentException if the bytes are not a checkpoint.
+     */
+    static Checkpoint decode(byte[] bytes) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            int index = buffer.getInt();
+            long createdMillis = buffer.getLong();
+            byte[] hashBytes = new byte[buffer.getInt()];
+            buffer.get(hashBytes);
+            byte[] signature = new byte[buffer.getInt()];
+            buffer.get(signature);
+            return new Checkpoint(index, new String(hashBytes, StandardCharsets.UTF_8), createdMillis, signature);
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Malformed checkpoint !!", e);
+        }
+    }
+
+    private static byte[] signedBytes(int index, String hash, long createdMillis) {
+        byte[] hashBytes = hash.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(Integer.BYTES + Long.BYTES + hashBytes.length)
+                .putInt(index).putLong(createdMillis).put(hashBytes).array();
+    }
+
+    private static String algorithmFor(Key key) throws GeneralSecurityException {
+        switch (key.getAlgorithm()) {
+            case "Ed25519":
+            case "EdDSA":
+                return "Ed25519";
+            case "EC":
+                return "SHA256withECDSA";
+            case "RSA":
+                return "SHA256withRSA";
+            default:
+                throw new GeneralSecurityException("No signature for " + key.getAlgorithm() + " keys");
+        }
+    }
+
+    /**
+     * Returns a JSON string.
+     * @return String - in JSON format.
+     */
+    @Override
+    public String toString() {
+        JSONObject json = new JSONObject();
+        json.put("index", index);
+        json.put("hash", hash);
+        json.put("created millis", createdMillis);
+        json.put("signature", Base64.getEncoder().encodeToString(signature));
+        return json.toString();
+    }
+}
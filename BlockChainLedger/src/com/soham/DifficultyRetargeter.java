@@ -0,0 +1,106 @@
+package com.soham;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class picks the target of the next block so blocks keep taking a configured
+ * time to mine. It keeps the expected work (attempts) and the measured mining time of
+ * the most recent blocks; their ratio is the hash rate the chain actually gets, and the
+ * next target is the one that rate meets in one block interval on average. Targets are
+ * numeric, so they move in any step instead of 16x per hex digit. A single step moves
+ * the expected work by at most MAX_ADJUSTMENT either way, so one lucky or unlucky
+ * block cannot swing the difficulty.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class DifficultyRetargeter {
+
+    // largest factor the expected work changes by from one target to the next.
+    private static final double MAX_ADJUSTMENT = 4;
+
+    // mining time each block should take.
+    private final long blockIntervalNanos;
+
+    // expected attempts and mining time of the recent blocks, a ring of window entries.
+    private final double[] work;
+    private final long[] nanos;
+
+    // number of recorded blocks in the ring, and where the next one goes.
+    private int count;
+    private int next;
+
+    // expected attempts of the target handed out last.
+    private double currentAttempts;
+
+    // target used until a block was recorded.
+    private final Target initial;
+
+    /**
+     * Constructor.
+     * @param blockInterval mining time each block should take.
+     * @param unit unit of the interval.
+     * @param window number of recent blocks the hash rate is measured over.
+     * @param initial target until the first block is recorded.
+     */
+    public DifficultyRetargeter(long blockInterval, TimeUnit unit, int window, Target initial) {
+        if (blockInterval <= 0 || window <= 0) {
+            throw new IllegalArgumentException("Block interval and window must be > 0 !!");
+        }
+        this.blockIntervalNanos = unit.toNanos(blockInterval);
+        this.work = new double[window];
+        this.nanos = new long[window];
+        this.initial = initial;
+        this.currentAttempts = initial.getExpectedAttempts();
+    }
+
+    /**
+     * Records how long a block took to mine.
+     * @param target the target the block was mined at.
+     * @param miningNanos time its proof of work took.
+     */
+    public synchronized void record(Target target, long miningNanos) {
+        work[next] = target.getExpectedAttempts();
+        // a block mined on the first attempt can take under the clock's resolution.
+        nanos[next] = Math.max(1, miningNanos);
+        next = (next + 1) % work.length;
+        count = Math.min(count + 1, work.length);
+    }
+
+    /**
+     * Returns the target of the next block.
+     * @return Target - the target meeting the block interval at the measured hash rate.
+     */
+    public synchronized Target nextTarget() {
+        if (count == 0) {
+            return initial;
+        }
+        double desired = getHashesPerSecond() * blockIntervalNanos / 1e9;
+        desired = Math.min(desired, currentAttempts * MAX_ADJUSTMENT);
+        desired = Math.max(desired, currentAttempts / MAX_ADJUSTMENT);
+        currentAttempts = Math.max(1, desired);
+        return Target.ofExpectedAttempts(currentAttempts);
+    }
+
+    /**
+     * Hash rate measured over the recent blocks.
+     * @return double - expected attempts per second, 0 before a block was recorded.
+     */
+    public synchronized double getHashesPerSecond() {
+        double totalWork = 0;
+        long totalNanos = 0;
+        for (int i = 0; i < count; i++) {
+            totalWork += work[i];
+            totalNanos += nanos[i];
+        }
+        return count == 0 ? 0 : totalWork * 1e9 / totalNanos;
+    }
+
+    /**
+     * getter for the block interval.
+     * @return long - block interval in milliseconds.
+     */
+    public long getBlockIntervalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(blockIntervalNanos);
+    }
+}
@@ -0,0 +1,70 @@
+package com.soham;
+
+/**
+ * This class is a SHA-256 hash as a map key: the 32 bytes held in four longs instead
+ * of a 64 character hex string, so an index entry costs a fraction of the memory and
+ * equals compares four numbers.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+final class HashKey {
+
+    private final long w0;
+    private final long w1;
+    private final long w2;
+    private final long w3;
+
+    /**
+     * Constructor.
+     * @param hash 32 byte raw hash.
+     */
+    HashKey(byte[] hash) {
+        if (hash.length != BlockHasher.HASH_LENGTH) {
+            throw new IllegalArgumentException("A hash key needs 32 bytes !!");
+        }
+        w0 = word(hash, 0);
+        w1 = word(hash, 8);
+        w2 = word(hash, 16);
+        w3 = word(hash, 24);
+    }
+
+    /**
+     * Key of a hex hash.
+     * @param hexHash hash in hex format.
+     * @return HashKey - the key, null if the string is not a 32 byte hex hash.
+     */
+    static HashKey ofHex(String hexHash) {
+        byte[] hash = hexHash == null ? null : BlockHasher.fromHex(hexHash);
+        if (hash == null || hash.length != BlockHasher.HASH_LENGTH) {
+            return null;
+        }
+        return new HashKey(hash);
+    }
+
+    private static long word(byte[] hash, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + Long.BYTES; i++) {
+            value = (value << 8) | (hash[i] & 0xff);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof HashKey)) {
+            return false;
+        }
+        HashKey that = (HashKey) other;
+        return w0 == that.w0 && w1 == that.w1 && w2 == that.w2 && w3 == that.w3;
+    }
+
+    @Override
+    public int hashCode() {
+        // the hash is already uniformly distributed, any of its bits will do.
+        return (int) (w3 ^ (w3 >>> 32));
+    }
+}
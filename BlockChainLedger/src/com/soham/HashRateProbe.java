@@ -0,0 +1,159 @@
+package com.soham;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures the mining hash rate of this machine. Every thread hashes a real
+ * block header the way the miners do (next nonce, SHA-256, no hex), warms up first so
+ * the JIT has compiled the loop, and looks at the clock only once per batch of hashes
+ * so the clock does not dominate what is measured. The measurement is cut into sample
+ * windows to report how steady the rate is, not only its mean.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class HashRateProbe {
+
+    // hashes between two reads of the clock.
+    private static final int BATCH = 256;
+
+    // a parent hash, so headers are as long as those of real blocks.
+    private static final String PREVIOUS_HASH =
+            "00c0ffee00c0ffee00c0ffee00c0ffee00c0ffee00c0ffee00c0ffee00c0ffee";
+
+    private final long warmupNanos;
+    private final long durationNanos;
+    private final long sampleNanos;
+
+    // written once per thread so the hashes are not optimized away.
+    private volatile int sink;
+
+    /**
+     * Constructor with a 500 ms warmup, 1 s measurement and 50 ms sample windows.
+     */
+    public HashRateProbe() {
+        this(500, 1000, 50, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructor.
+     * @param warmup time each thread hashes before measuring.
+     * @param duration time measured.
+     * @param sample length of a sample window, at most the duration.
+     * @param unit unit of the times.
+     */
+    public HashRateProbe(long warmup, long duration, long sample, TimeUnit unit) {
+        if (duration <= 0 || sample <= 0 || sample > duration || warmup < 0) {
+            throw new IllegalArgumentException("Need warmup >= 0 and 0 < sample <= duration !!");
+        }
+        this.warmupNanos = unit.toNanos(warmup);
+        this.sampleNanos = unit.toNanos(sample);
+        // measure whole windows only.
+        this.durationNanos = unit.toNanos(duration) / sampleNanos * sampleNanos;
+    }
+
+    /**
+     * Measures the hash rate on a number of threads.
+     * @param threads number of threads hashing at the same time.
+     * @return HashRateReport - the rates measured.
+     */
+    public HashRateReport measure(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Threads must be > 0 !!");
+        }
+        int windows = (int) (durationNanos / sampleNanos);
+        long[][] counts = new long[threads][windows];
+        long[] start = new long[1];
+        // all threads start measuring together, once all are warm.
+        CyclicBarrier ready = new CyclicBarrier(threads, () -> start[0] = System.nanoTime());
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int w = 0; w < threads; w++) {
+            int workerId = w;
+            Thread worker = new Thread(() -> hash(workerId, ready, start, counts[workerId]),
+                    "hash-rate-probe-" + w);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            workers.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while measuring the hash rate", e);
+        }
+        double[] windowRates = new double[windows];
+        long total = 0;
+        for (int k = 0; k < windows; k++) {
+            long hashes = 0;
+            for (long[] threadCounts : counts) {
+                hashes += threadCounts[k];
+            }
+            total += hashes;
+            windowRates[k] = hashes * 1e9 / sampleNanos;
+        }
+        Arrays.sort(windowRates);
+        return new HashRateReport(threads, total * 1e9 / durationNanos, windowRates);
+    }
+
+    /**
+     * Measures the hash rate on 1 to maxThreads threads.
+     * @param maxThreads largest number of threads.
+     * @return List - one report per thread count.
+     */
+    public List<HashRateReport> measureUpTo(int maxThreads) {
+        List<HashRateReport> reports = new ArrayList<>(maxThreads);
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            reports.add(measure(threads));
+        }
+        return reports;
+    }
+
+    private void hash(int workerId, CyclicBarrier ready, long[] start, long[] windowCounts) {
+        Block header = new Block(0, new Timestamp(System.currentTimeMillis()), "hash rate probe " + workerId, 0);
+        header.setPreviousHash(PREVIOUS_HASH);
+        BlockHasher hasher = new BlockHasher(header);
+        int fold = 0;
+        long warmupEnd = System.nanoTime() + warmupNanos;
+        while (System.nanoTime() < warmupEnd) {
+            fold += hashBatch(hasher);
+        }
+        try {
+            ready.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (BrokenBarrierException e) {
+            return;
+        }
+        long begin = start[0];
+        long end = begin + durationNanos;
+        while (true) {
+            fold += hashBatch(hasher);
+            long now = System.nanoTime();
+            // a batch finishing after the end is not counted.
+            if (now >= end) {
+                break;
+            }
+            windowCounts[(int) ((now - begin) / sampleNanos)] += BATCH;
+        }
+        sink = fold;
+    }
+
+    private static int hashBatch(BlockHasher hasher) {
+        int fold = 0;
+        for (int i = 0; i < BATCH; i++) {
+            hasher.addToNonce(1);
+            fold += hasher.digest()[0];
+        }
+        return fold;
+    }
+}
@@ -0,0 +1,145 @@
+package com.soham;
+
+import org.json.JSONObject;
+
+/**
+ * This class describes the hash rate {@link HashRateProbe} measured on a number of threads.
+ * Percentiles are over the sample windows of the measurement, each window's rate being
+ * the hashes of all threads in that window.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class HashRateReport {
+
+    // number of threads hashing.
+    private final int threads;
+
+    // hashes per second over the whole measurement.
+    private final double meanHashesPerSecond;
+
+    // hashes per second of the slowest, median, 10th slowest percent and fastest windows.
+    private final double minHashesPerSecond;
+    private final double p50HashesPerSecond;
+    private final double p10HashesPerSecond;
+    private final double maxHashesPerSecond;
+
+    // number of sample windows.
+    private final int samples;
+
+    /**
+     * Constructor.
+     * @param threads
+     * @param meanHashesPerSecond
+     * @param windowRates hashes per second of each sample window, sorted.
+     */
+    HashRateReport(int threads, double meanHashesPerSecond, double[] windowRates) {
+        this.threads = threads;
+        this.meanHashesPerSecond = meanHashesPerSecond;
+        this.samples = windowRates.length;
+        this.minHashesPerSecond = windowRates[0];
+        this.p10HashesPerSecond = percentile(windowRates, 10);
+        this.p50HashesPerSecond = percentile(windowRates, 50);
+        this.maxHashesPerSecond = windowRates[windowRates.length - 1];
+    }
+
+    /**
+     * getter for the threads field.
+     * @return
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * getter for the mean hashes per second field.
+     * @return
+     */
+    public double getMeanHashesPerSecond() {
+        return meanHashesPerSecond;
+    }
+
+    /**
+     * getter for the min hashes per second field.
+     * @return
+     */
+    public double getMinHashesPerSecond() {
+        return minHashesPerSecond;
+    }
+
+    /**
+     * getter for the 10th percentile, the rate 90% of the windows reached.
+     * @return
+     */
+    public double getP10HashesPerSecond() {
+        return p10HashesPerSecond;
+    }
+
+    /**
+     * getter for the median hashes per second field.
+     * @return
+     */
+    public double getP50HashesPerSecond() {
+        return p50HashesPerSecond;
+    }
+
+    /**
+     * getter for the max hashes per second field.
+     * @return
+     */
+    public double getMaxHashesPerSecond() {
+        return maxHashesPerSecond;
+    }
+
+    /**
+     * getter for the samples field.
+     * @return
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    /**
+     * Expected time to mine a block at the measured mean rate.
+     * @param difficulty number of leading zero hex digits.
+     * @return double - expected (mean) seconds. Mining time is exponentially distributed,
+     * so about 63% of blocks take less, and the median is this value times ln 2.
+     */
+    public double getExpectedSecondsToMine(int difficulty) {
+        return getExpectedSecondsToMine(Target.ofHexDigits(difficulty));
+    }
+
+    /**
+     * Expected time to mine a block at the measured mean rate.
+     * @param target the target of the block.
+     * @return double - expected seconds.
+     */
+    public double getExpectedSecondsToMine(Target target) {
+        return target.getExpectedAttempts() / meanHashesPerSecond;
+    }
+
+    /**
+     * Nearest rank percentile.
+     */
+    private static double percentile(double[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * Returns a JSON string.
+     * @return String - in JSON format.
+     */
+    @Override
+    public String toString() {
+        JSONObject json = new JSONObject();
+        json.put("threads", threads);
+        json.put("mean hashes per second", Math.round(meanHashesPerSecond));
+        json.put("min", Math.round(minHashesPerSecond));
+        json.put("p10", Math.round(p10HashesPerSecond));
+        json.put("p50", Math.round(p50HashesPerSecond));
+        json.put("max", Math.round(maxHashesPerSecond));
+        json.put("samples", samples);
+        return json.toString();
+    }
+}
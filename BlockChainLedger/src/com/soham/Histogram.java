@@ -0,0 +1,109 @@
+package com.soham;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is a lock-free histogram of non-negative long values, such as latencies
+ * in nanoseconds or nonce attempts. Values below 16 get a bucket each; larger values
+ * fall in one of 8 buckets per power of two, so a percentile is off by at most 12.5%
+ * whatever the scale. Recording is one array increment; the exact max is kept aside.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public final class Histogram {
+
+    // buckets per power of two, as a number of bits.
+    private static final int SUB_BITS = 3;
+
+    // values below this have a bucket each.
+    private static final int LINEAR = 1 << (SUB_BITS + 1);
+
+    // enough buckets for any non-negative long.
+    private static final int BUCKETS = LINEAR + (Long.SIZE - 1 - (SUB_BITS + 1)) * (1 << SUB_BITS);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value, negative values are recorded as 0.
+     * @param value the value.
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(bucketOf(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        max.accumulateAndGet(v, Math::max);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * @return long - count.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the largest recorded value.
+     * @return long - max, 0 if nothing was recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the recorded values.
+     * @return double - mean, 0 if nothing was recorded.
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Returns a percentile, the upper bound of the bucket holding it and never more than the max.
+     * @param percent the percentile, between 0 and 100.
+     * @return long - the value, 0 if nothing was recorded.
+     */
+    public long getPercentile(double percent) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percent / 100 * n));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(bucket), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static int bucketOf(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+        return LINEAR + (exponent - SUB_BITS - 1) * (1 << SUB_BITS) + sub;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR) / (1 << SUB_BITS) + SUB_BITS + 1;
+        int sub = (bucket - LINEAR) % (1 << SUB_BITS);
+        long lower = (1L << exponent) + ((long) sub << (exponent - SUB_BITS));
+        long width = 1L << (exponent - SUB_BITS);
+        // the top bucket would overflow.
+        return lower + width - 1 < 0 ? Long.MAX_VALUE : lower + width - 1;
+    }
+}
@@ -0,0 +1,314 @@
+package com.soham;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * This class serves the menu operations over HTTP, one virtual thread per request
+ * when the JVM has them (Java 21+) and a cached thread pool otherwise.
+ * <ul>
+ * <li>GET /status - size, chain hash and latest block, verified prefix and metrics (option 0).</li>
+ * <li>POST /transactions - {"data": "...", "difficulty": 3 or "auto"} queues a block (option 1),
+ * answers 202 at once, or 201 with the block once mined with ?wait=true. A difficulty
+ * outside the configured range is answered with 400, and a block whose proof of work
+ * takes longer than the mining timeout is given up (503 with ?wait=true).</li>
+ * <li>GET /verify - validates the chain (option 2).</li>
+ * <li>GET /chain?from=0&amp;count=100 - a page of the chain document (option 3).</li>
+ * <li>POST /repair - repairs the chain (option 5).</li>
+ * </ul>
+ * Reads work on chain snapshots without locks, so they never wait for a block
+ * being mined; only /repair waits for the chain's write lock.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class LedgerHttpServer {
+
+    // default and largest number of blocks in one /chain page.
+    private static final int DEFAULT_PAGE = 100;
+    private static final int MAX_PAGE = 1000;
+
+    // connections the server queues before accepting them.
+    private static final int BACKLOG = 4096;
+
+    // default range of difficulties accepted from clients.
+    private static final int DEFAULT_MIN_DIFFICULTY = 0;
+    private static final int DEFAULT_MAX_DIFFICULTY = 6;
+
+    // default longest proof of work of a submitted block.
+    private static final long DEFAULT_MINING_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private final BlockChain chain;
+    private final MiningPipeline pipeline;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // range of difficulties accepted from clients.
+    private volatile int minDifficulty = DEFAULT_MIN_DIFFICULTY;
+    private volatile int maxDifficulty = DEFAULT_MAX_DIFFICULTY;
+
+    // longest proof of work of a submitted block, in milliseconds.
+    private volatile long miningTimeoutMillis = DEFAULT_MINING_TIMEOUT_MILLIS;
+
+    /**
+     * Constructor, the server is started by {@link #start()}.
+     * @param chain the chain to serve.
+     * @param pipeline the pipeline submitted transactions are mined by.
+     * @param address address to listen on, port 0 picks a free port.
+     * @throws IOException if the address cannot be bound.
+     */
+    public LedgerHttpServer(BlockChain chain, MiningPipeline pipeline, InetSocketAddress address) throws IOException {
+        this.chain = chain;
+        this.pipeline = pipeline;
+        this.server = HttpServer.create(address, BACKLOG);
+        this.executor = newPerRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/status", handler("GET", this::status));
+        server.createContext("/transactions", handler("POST", this::transactions));
+        server.createContext("/verify", handler("GET", this::verify));
+        server.createContext("/chain", handler("GET", this::chainPage));
+        server.createContext("/repair", handler("POST", this::repair));
+    }
+
+    /**
+     * Starts serving.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops serving, waiting up to a second for requests in progress.
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * setter for the range of difficulties accepted from clients, others are answered with 400.
+     * @param min lowest difficulty, at least 0.
+     * @param max highest difficulty.
+     */
+    public void setDifficultyRange(int min, int max) {
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("Need 0 <= min <= max !!");
+        }
+        this.minDifficulty = min;
+        this.maxDifficulty = max;
+    }
+
+    /**
+     * setter for the mining timeout, a submitted block whose proof of work takes longer is given up.
+     * @param timeout the maximum time to mine one block.
+     * @param unit unit of the timeout.
+     */
+    public void setMiningTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Timeout must be > 0 !!");
+        }
+        this.miningTimeoutMillis = unit.toMillis(timeout);
+    }
+
+    /**
+     * Returns the address the server listens on.
+     * @return InetSocketAddress - local address, with the actual port.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * A virtual thread per task where available, looked up reflectively so the
+     * ledger still builds and runs on Java 17.
+     */
+    private static ExecutorService newPerRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "ledger-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void status(HttpExchange exchange) throws IOException {
+        ChainSnapshot snapshot = chain.snapshot();
+        JSONObject json = new JSONObject();
+        json.put("size", snapshot.getSize());
+        json.put("chainHash", snapshot.getChainHash());
+        if (snapshot.getSize() > 0) {
+            Block latest = snapshot.getLatestBlock();
+            json.put("difficulty", latest.getDifficulty());
+            json.put("nonce", latest.getNonce());
+        }
+        json.put("verifiedUpTo", chain.getVerifiedUpTo());
+        Checkpoint checkpoint = chain.getCheckpoint();
+        if (checkpoint != null) {
+            json.put("checkpoint", new JSONObject(checkpoint.toString()));
+        }
+        json.put("queueDepth", pipeline.getInFlight());
+        json.put("metrics", new JSONObject(chain.getMetrics().toString()));
+        send(exchange, 200, json);
+    }
+
+    private void transactions(HttpExchange exchange) throws IOException {
+        JSONObject request;
+        try (InputStream body = exchange.getRequestBody()) {
+            request = new JSONObject(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        String data = request.getString("data");
+        Object difficulty = request.opt("difficulty");
+        long timeout = miningTimeoutMillis;
+        CompletableFuture<Block> added;
+        if (difficulty == null || "auto".equals(difficulty)) {
+            added = pipeline.submit(data, timeout, TimeUnit.MILLISECONDS);
+        } else {
+            int requested = request.getInt("difficulty");
+            if (requested < minDifficulty || requested > maxDifficulty) {
+                throw new IllegalArgumentException("Difficulty must be \"auto\" or between "
+                        + minDifficulty + " and " + maxDifficulty);
+            }
+            added = pipeline.submit(data, requested, timeout, TimeUnit.MILLISECONDS);
+        }
+        if (!"true".equals(query(exchange).get("wait"))) {
+            JSONObject json = new JSONObject();
+            json.put("queued", true);
+            json.put("queueDepth", pipeline.getInFlight());
+            send(exchange, 202, json);
+            return;
+        }
+        try {
+            send(exchange, 201, new JSONObject(added.get().toString()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the block", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                // the block was given up, the chain is free for the next one.
+                sendError(exchange, 503, e.getCause().getMessage());
+                return;
+            }
+            throw new IllegalStateException("Could not add the block: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void verify(HttpExchange exchange) throws IOException {
+        long startTime = System.currentTimeMillis();
+        int firstInvalidBlock = chain.findFirstInvalidBlock();
+        JSONObject json = new JSONObject();
+        json.put("valid", firstInvalidBlock < 0);
+        json.put("first invalid block", firstInvalidBlock);
+        json.put("elapsed millis", System.currentTimeMillis() - startTime);
+        send(exchange, 200, json);
+    }
+
+    private void chainPage(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        int size = chain.getChainSize();
+        int from = Integer.parseInt(query.getOrDefault("from", "0"));
+        int count = Integer.parseInt(query.getOrDefault("count", String.valueOf(DEFAULT_PAGE)));
+        if (from < 0 || from > size || count < 0) {
+            throw new IllegalArgumentException("Need 0 <= from <= " + size + " and count >= 0");
+        }
+        int to = (int) Math.min(size, (long) from + Math.min(count, MAX_PAGE));
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        // length 0 streams the page in chunks.
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer out = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)) {
+            ChainExporter.writeJson(chain, out, from, to);
+        }
+    }
+
+    private void repair(HttpExchange exchange) throws IOException {
+        send(exchange, 200, new JSONObject(chain.repairChain().toString()));
+    }
+
+    /**
+     * Wraps an endpoint with its method check and the mapping of errors to status codes.
+     */
+    private HttpHandler handler(String method, HttpHandler endpoint) {
+        return exchange -> {
+            try {
+                if (!method.equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Allow", method);
+                    sendError(exchange, 405, "Use " + method);
+                    return;
+                }
+                endpoint.handle(exchange);
+            } catch (IllegalArgumentException | JSONException e) {
+                // NumberFormatException is an IllegalArgumentException too.
+                sendError(exchange, 400, e.getMessage());
+            } catch (RejectedExecutionException e) {
+                sendError(exchange, 503, e.getMessage());
+            } catch (RuntimeException e) {
+                sendError(exchange, 500, e.getMessage());
+            } finally {
+                exchange.close();
+            }
+        };
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        URI uri = exchange.getRequestURI();
+        String raw = uri.getRawQuery();
+        if (raw == null) {
+            return parameters;
+        }
+        for (String pair : raw.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static void send(HttpExchange exchange, int status, JSONObject json) throws IOException {
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        JSONObject json = new JSONObject();
+        json.put("error", message == null ? "" : message);
+        try {
+            send(exchange, status, json);
+        } catch (IOException | RuntimeException e) {
+            // the response was already started or the client went away.
+        }
+    }
+}
@@ -0,0 +1,637 @@
+package com.soham;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * This class replicates a BlockChain between nodes over non-blocking java.nio channels.
+ * One selector thread serves every connection. Messages are length framed:
+ * [int length][byte type][payload], blocks travel in the {@link BlockCodec} format.
+ * <ul>
+ * <li>STATUS (chain size, chain hash) is sent when a connection opens.</li>
+ * <li>ANNOUNCE (one block) is sent to every peer when a block is mined here, and
+ * relayed when a received announcement extends the chain.</li>
+ * <li>GET_RANGE (from, count) asks a peer for blocks, a node behind a peer keeps
+ * PIPELINE requests of up to BATCH blocks in flight until it has caught up.</li>
+ * <li>BLOCKS (from, count, blocks) answers a GET_RANGE.</li>
+ * </ul>
+ * A received block is checked with one hash: its hash must be the one the sender
+ * recorded, meet the block's target, that target must be at least as hard as the
+ * node's minimum target, since the sender picks it, and the block must extend the
+ * local chain. Forks are not resolved, blocks that do not extend the chain are dropped.
+ * Received blocks are decoded, checked and appended on an appender thread in the order
+ * they arrived, and the blocks of a GET_RANGE are loaded and encoded on a serving thread,
+ * so the selector thread takes no locks, does no codec work and keeps serving every peer
+ * while the appender waits for a block being mined here. A peer sending a malformed
+ * block is disconnected, the other connections are not affected.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class LedgerNode implements Closeable {
+
+    private static final byte STATUS = 1;
+    private static final byte ANNOUNCE = 2;
+    private static final byte GET_RANGE = 3;
+    private static final byte BLOCKS = 4;
+
+    // most blocks in one BLOCKS message.
+    static final int BATCH = 256;
+
+    // most GET_RANGE requests in flight to one peer.
+    static final int PIPELINE = 4;
+
+    // largest frame accepted, a peer sending more is disconnected.
+    private static final int MAX_FRAME = 64 << 20;
+
+    // default easiest target of a received block, in leading zero hex digits.
+    private static final int DEFAULT_MIN_DIFFICULTY = 1;
+
+    // the chain replicated by this node.
+    private final BlockChain chain;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Thread selectorThread;
+
+    // work for the selector thread handed over by other threads.
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    // checks and appends received blocks, one at a time in the order they arrived.
+    private final ExecutorService appender;
+
+    // loads and encodes the blocks peers ask for, one range at a time in the order asked.
+    private final ExecutorService rangeServer;
+
+    // easiest target a received block may have.
+    private volatile Target minimumTarget = Target.ofHexDigits(DEFAULT_MIN_DIFFICULTY);
+
+    // open connections, only touched by the selector thread.
+    private final List<Peer> peers = new ArrayList<>();
+
+    // announces blocks mined here.
+    private final Consumer<Block> announcer = this::announce;
+
+    private volatile boolean running = true;
+
+    /**
+     * Constructor, starts listening.
+     * @param chain the chain to replicate.
+     * @param address address to listen on, port 0 picks a free port.
+     * @throws IOException if the address cannot be bound.
+     */
+    public LedgerNode(BlockChain chain, InetSocketAddress address) throws IOException {
+        this.chain = chain;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        int port = getLocalAddress().getPort();
+        appender = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ledger-node-append-" + port);
+            thread.setDaemon(true);
+            return thread;
+        });
+        rangeServer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ledger-node-serve-" + port);
+            thread.setDaemon(true);
+            return thread;
+        });
+        selectorThread = new Thread(this::run, "ledger-node-" + port);
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        chain.addBlockListener(announcer);
+    }
+
+    /**
+     * Returns the address the node listens on.
+     * @return InetSocketAddress - local address, with the actual port.
+     */
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) server.getLocalAddress();
+        } catch (IOException e) {
+            throw new IllegalStateException("Node is closed !!", e);
+        }
+    }
+
+    /**
+     * Connects to another node, both then sync towards the longer chain.
+     * @param address address of the other node.
+     * @throws IOException if the connection cannot be started.
+     */
+    public void connect(InetSocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        boolean connected = channel.connect(address);
+        execute(() -> {
+            try {
+                Peer peer = new Peer(channel);
+                if (connected) {
+                    peer.key = channel.register(selector, SelectionKey.OP_READ, peer);
+                    opened(peer);
+                } else {
+                    peer.key = channel.register(selector, SelectionKey.OP_CONNECT, peer);
+                }
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        });
+    }
+
+    /**
+     * getter for the minimum target field.
+     * @return
+     */
+    public Target getMinimumTarget() {
+        return minimumTarget;
+    }
+
+    /**
+     * setter for the minimum target field, received blocks with an easier target are dropped.
+     * @param minimumTarget easiest target a received block may have.
+     */
+    public void setMinimumTarget(Target minimumTarget) {
+        this.minimumTarget = minimumTarget;
+    }
+
+    /**
+     * Returns the number of open connections.
+     * @return int - number of peers.
+     */
+    public int getPeerCount() {
+        if (!running || Thread.currentThread() == selectorThread) {
+            return peers.size();
+        }
+        CompletableFuture<Integer> count = new CompletableFuture<>();
+        execute(() -> count.complete(peers.size()));
+        return count.join();
+    }
+
+    /**
+     * Stops the node and closes every connection.
+     */
+    @Override
+    public void close() {
+        running = false;
+        chain.removeBlockListener(announcer);
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        appender.shutdownNow();
+        rangeServer.shutdownNow();
+    }
+
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void announce(Block block) {
+        ByteBuffer frame = announceFrame(block);
+        execute(() -> {
+            // a failed send drops the peer from the list, so walk a copy.
+            for (Peer peer : new ArrayList<>(peers)) {
+                peer.send(frame.duplicate());
+            }
+        });
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Peer peer = (Peer) key.attachment();
+                    try {
+                        if (key.isConnectable() && peer.channel.finishConnect()) {
+                            key.interestOps(SelectionKey.OP_READ);
+                            opened(peer);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(peer);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            peer.flush();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // a broken or misbehaving peer is dropped, the node keeps running.
+                        disconnect(peer);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Ledger node selector failed", e);
+        } finally {
+            for (Peer peer : new ArrayList<>(peers)) {
+                disconnect(peer);
+            }
+            closeQuietly(server);
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Peer peer = new Peer(channel);
+        peer.key = channel.register(selector, SelectionKey.OP_READ, peer);
+        opened(peer);
+    }
+
+    private void opened(Peer peer) {
+        peers.add(peer);
+        peer.send(statusFrame());
+    }
+
+    private void disconnect(Peer peer) {
+        peers.remove(peer);
+        if (peer.key != null) {
+            peer.key.cancel();
+        }
+        closeQuietly(peer.channel);
+    }
+
+    private void read(Peer peer) throws IOException {
+        if (peer.channel.read(peer.in) < 0) {
+            disconnect(peer);
+            return;
+        }
+        peer.in.flip();
+        while (peer.in.remaining() >= Integer.BYTES) {
+            int length = peer.in.getInt(peer.in.position());
+            if (length <= 0 || length > MAX_FRAME) {
+                throw new IOException("Bad frame length " + length);
+            }
+            if (peer.in.remaining() < Integer.BYTES + length) {
+                break;
+            }
+            peer.in.position(peer.in.position() + Integer.BYTES);
+            ByteBuffer message = peer.in.slice();
+            message.limit(length);
+            peer.in.position(peer.in.position() + length);
+            handle(peer, message);
+        }
+        peer.in.compact();
+        if (!peer.in.hasRemaining()) {
+            // the next frame does not fit, grow up to the frame it announces.
+            int needed = Integer.BYTES + peer.in.getInt(0);
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(needed, peer.in.capacity() * 2));
+            grown.put(peer.in.flip());
+            peer.in = grown;
+        }
+    }
+
+    private void handle(Peer peer, ByteBuffer message) {
+        byte type = message.get();
+        switch (type) {
+            case STATUS:
+                peer.remoteSize = Math.max(peer.remoteSize, message.getInt());
+                requestMore(peer);
+                break;
+            case ANNOUNCE:
+                receiveAnnounce(peer, message);
+                break;
+            case GET_RANGE:
+                int from = message.getInt();
+                int count = message.getInt();
+                later(rangeServer, peer, () -> {
+                    ByteBuffer frame = rangeFrame(from, count);
+                    return () -> peer.send(frame);
+                });
+                break;
+            case BLOCKS:
+                receiveBlocks(peer, message);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown message type " + type);
+        }
+    }
+
+    private void receiveAnnounce(Peer peer, ByteBuffer message) {
+        int position = message.getInt();
+        peer.remoteSize = Math.max(peer.remoteSize, position + 1);
+        int size = chain.getChainSize();
+        if (position == size) {
+            ByteBuffer encoded = copyOf(message);
+            later(appender, peer, () -> {
+                if (append(encoded) == null) {
+                    return null;
+                }
+                // pass the block on, nodes that already have it drop it.
+                ByteBuffer frame = announceFrame(chain.getBlock(position));
+                return () -> {
+                    for (Peer other : new ArrayList<>(peers)) {
+                        if (other != peer) {
+                            other.send(frame.duplicate());
+                        }
+                    }
+                };
+            });
+        } else if (position > size) {
+            requestMore(peer);
+        }
+    }
+
+    /**
+     * Encodes the blocks a GET_RANGE asks for, reading them from the store if they are
+     * not loaded yet. Serving thread only.
+     * @return ByteBuffer - the BLOCKS frame, ready to be sent.
+     */
+    private ByteBuffer rangeFrame(int from, int count) {
+        ChainSnapshot snapshot = chain.snapshot();
+        int to = (int) Math.min(snapshot.getSize(), Math.min((long) from + count, (long) from + BATCH));
+        int start = Math.max(0, from);
+        List<ByteBuffer> encoded = new ArrayList<>(Math.max(0, to - start));
+        int length = Integer.BYTES * 2;
+        for (int i = start; i < to; i++) {
+            Block served = snapshot.getBlock(i);
+            if (!served.hasPayload()) {
+                // pruned without a store, a shorter answer tells the peer we cannot serve these.
+                break;
+            }
+            ByteBuffer block = BlockCodec.encode(served);
+            encoded.add(block);
+            length += Integer.BYTES + block.remaining();
+        }
+        ByteBuffer frame = frame(BLOCKS, length);
+        frame.putInt(start).putInt(encoded.size());
+        for (ByteBuffer block : encoded) {
+            frame.putInt(block.remaining()).put(block);
+        }
+        return frame.flip();
+    }
+
+    private void receiveBlocks(Peer peer, ByteBuffer message) {
+        peer.outstanding = Math.max(0, peer.outstanding - 1);
+        int from = message.getInt();
+        int count = message.getInt();
+        ByteBuffer blocks = copyOf(message);
+        later(appender, peer, () -> appendBlocks(peer, blocks, from, count));
+    }
+
+    /**
+     * Appends the blocks of a BLOCKS message. Appender thread only.
+     * @return Runnable - what the selector thread does next with the peer.
+     */
+    private Runnable appendBlocks(Peer peer, ByteBuffer message, int from, int count) {
+        int sizeBefore = chain.getChainSize();
+        // chain size to ask again from when blocks are missing, -1 if none are.
+        int missingFrom = -1;
+        // chain size when the peer's chain stopped extending ours, -1 if it did not.
+        int divergedAt = -1;
+        for (int i = 0; i < count; i++) {
+            int length = message.getInt();
+            ByteBuffer block = message.slice();
+            block.limit(length);
+            message.position(message.position() + length);
+            int position = from + i;
+            int size = chain.getChainSize();
+            if (position < size) {
+                // another peer was faster.
+                continue;
+            }
+            if (position > size) {
+                // blocks are missing before these, ask again from where the chain is.
+                missingFrom = size;
+                break;
+            }
+            if (append(block) == null) {
+                divergedAt = size;
+                break;
+            }
+        }
+        ByteBuffer status = chain.getChainSize() > sizeBefore ? statusFrame() : null;
+        int askFrom = missingFrom;
+        int stopAt = divergedAt;
+        return () -> {
+            if (status != null) {
+                // synced blocks are not announced one by one, tell the other peers the new size instead.
+                for (Peer other : new ArrayList<>(peers)) {
+                    if (other != peer) {
+                        other.send(status.duplicate());
+                    }
+                }
+            }
+            if (stopAt >= 0) {
+                // the peer's chain does not extend ours, stop syncing from it.
+                peer.remoteSize = stopAt;
+                return;
+            }
+            if (askFrom >= 0) {
+                peer.requestedUpTo = askFrom;
+            }
+            if (count == 0) {
+                // the peer has less than it said.
+                peer.remoteSize = Math.min(peer.remoteSize, from);
+            }
+            requestMore(peer);
+        };
+    }
+
+    /**
+     * Runs work for a peer on the appender or serving thread, then hands what it returns
+     * back to the selector thread. A peer whose blocks are malformed, or whose range
+     * cannot be read, is disconnected.
+     * @param executor the thread to run the work on.
+     * @param peer the peer the work is for.
+     * @param work checks and appends the blocks, or encodes a range, returns the follow
+     * up for the selector thread or null.
+     */
+    private void later(ExecutorService executor, Peer peer, Supplier<Runnable> work) {
+        executor.execute(() -> {
+            Runnable next;
+            try {
+                next = work.get();
+            } catch (RuntimeException e) {
+                // a truncated or hostile block, or a store that failed, only this peer is dropped.
+                execute(() -> disconnect(peer));
+                return;
+            }
+            if (next != null) {
+                execute(() -> {
+                    if (peers.contains(peer)) {
+                        next.run();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Keeps up to PIPELINE range requests in flight while the peer is ahead.
+     */
+    private void requestMore(Peer peer) {
+        int size = chain.getChainSize();
+        peer.requestedUpTo = Math.max(peer.requestedUpTo, size);
+        while (peer.outstanding < PIPELINE && peer.requestedUpTo < peer.remoteSize) {
+            int count = Math.min(BATCH, peer.remoteSize - peer.requestedUpTo);
+            ByteBuffer frame = frame(GET_RANGE, Integer.BYTES * 2);
+            frame.putInt(peer.requestedUpTo).putInt(count);
+            peer.send(frame.flip());
+            peer.requestedUpTo += count;
+            peer.outstanding++;
+        }
+    }
+
+    /**
+     * Decodes, checks with one hash and appends a received block, one whose target is
+     * easier than the minimum target is dropped. Appender thread only.
+     * @param encoded the block in the codec format.
+     * @return String - the block's hash, null if it was not appended.
+     */
+    private String append(ByteBuffer encoded) {
+        String recorded = BlockCodec.peekHash(encoded);
+        Block block = BlockCodec.decode(encoded);
+        Target target = block.getTarget();
+        if (target.getExpectedAttempts() < minimumTarget.getExpectedAttempts()) {
+            // the sender picked an easier target than this node accepts, do not even hash it.
+            return null;
+        }
+        String hash = block.calculateHash();
+        if (!hash.equals(recorded) || !target.isMetBy(hash) || !block.hasValidMerkleRoot()) {
+            return null;
+        }
+        return chain.appendMined(block, hash) ? hash : null;
+    }
+
+    private ByteBuffer statusFrame() {
+        ChainSnapshot snapshot = chain.snapshot();
+        byte[] hash = snapshot.getChainHash().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = frame(STATUS, Integer.BYTES * 2 + hash.length);
+        frame.putInt(snapshot.getSize()).putInt(hash.length).put(hash);
+        return frame.flip();
+    }
+
+    /**
+     * Copies the rest of a message out of the peer's read buffer, which is reused.
+     */
+    private static ByteBuffer copyOf(ByteBuffer message) {
+        ByteBuffer copy = ByteBuffer.allocate(message.remaining());
+        copy.put(message.duplicate());
+        return copy.flip();
+    }
+
+    private static ByteBuffer announceFrame(Block block) {
+        ByteBuffer encoded = BlockCodec.encode(block);
+        ByteBuffer frame = frame(ANNOUNCE, Integer.BYTES + encoded.remaining());
+        frame.putInt(block.getIndex()).put(encoded);
+        return frame.flip();
+    }
+
+    /**
+     * Allocates a frame and writes its length and type.
+     * @param type message type.
+     * @param payload payload length after the type.
+     * @return ByteBuffer - the frame, positioned at the payload.
+     */
+    private static ByteBuffer frame(byte type, int payload) {
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + 1 + payload);
+        frame.putInt(1 + payload).put(type);
+        return frame;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing left to do with it.
+        }
+    }
+
+    /**
+     * A connection to another node. Only the selector thread touches it.
+     */
+    private final class Peer {
+
+        private final SocketChannel channel;
+        private SelectionKey key;
+
+        // bytes read but not handled yet, in write mode.
+        private ByteBuffer in = ByteBuffer.allocate(64 << 10);
+
+        // frames waiting to be written.
+        private final Deque<ByteBuffer> out = new ArrayDeque<>();
+
+        // chain size the peer has told about.
+        private int remoteSize;
+
+        // blocks below this were requested from the peer or are on the chain.
+        private int requestedUpTo;
+
+        // GET_RANGE requests not answered yet.
+        private int outstanding;
+
+        Peer(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void send(ByteBuffer frame) {
+            out.add(frame);
+            if (key != null && key.isValid() && (key.interestOps() & SelectionKey.OP_CONNECT) == 0) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    disconnect(this);
+                }
+            }
+        }
+
+        void flush() throws IOException {
+            while (!out.isEmpty()) {
+                ByteBuffer frame = out.peek();
+                channel.write(frame);
+                if (frame.hasRemaining()) {
+                    // the socket is full, carry on when it is writable again.
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                out.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.soham;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+/**
+ * This class pushes synthetic or recorded traffic through a {@link MiningPipeline} to
+ * find how much a single node sustains. Transactions are sent on a fixed schedule at
+ * the configured rate, and latency is measured from the time each one was due rather
+ * than the time it was actually sent, so a stalled chain shows up as latency instead
+ * of quietly lowering the offered load. Each transaction is its own block, at a
+ * difficulty drawn from the configured mix. Along the way the generator can corrupt
+ * a random block and time the repair, and time a full validation as the chain grows.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class LoadGenerator {
+
+    private static final char[] ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+    private final BlockChain chain;
+    private final MiningPipeline pipeline;
+
+    // transactions per second, 0 sends as fast as the pipeline takes them.
+    private double rate;
+
+    // size of a generated transaction, in characters.
+    private int payloadSize = 64;
+
+    // difficulties to draw from and the cumulative weight up to each of them.
+    private int[] difficulties = {2};
+    private int[] cumulativeWeights = {1};
+
+    // number of transactions to send, replayed logs stop earlier when they run out.
+    private int transactions = 1000;
+
+    // recorded transactions to send instead of generated ones, one per line.
+    private Path replayLog;
+
+    // blocks between two corruptions, 0 for none.
+    private int corruptEvery;
+
+    // blocks between two validation samples, 0 for a sample at the end only.
+    private int validateEvery;
+
+    private final Random random = new Random();
+
+    /**
+     * Constructor.
+     * @param chain the chain the pipeline adds blocks to.
+     * @param pipeline the pipeline to submit transactions to, the generator does not close it.
+     */
+    public LoadGenerator(BlockChain chain, MiningPipeline pipeline) {
+        this.chain = chain;
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * setter for the rate field.
+     * @param rate transactions per second, 0 sends as fast as the pipeline takes them.
+     */
+    public void setRate(double rate) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("Rate must be >= 0 !!");
+        }
+        this.rate = rate;
+    }
+
+    /**
+     * setter for the payload size field.
+     * @param payloadSize characters per generated transaction.
+     */
+    public void setPayloadSize(int payloadSize) {
+        if (payloadSize <= 0) {
+            throw new IllegalArgumentException("Payload size must be > 0 !!");
+        }
+        this.payloadSize = payloadSize;
+    }
+
+    /**
+     * Sets the difficulties blocks are mined at and how often each is drawn.
+     * @param difficulties the difficulties.
+     * @param weights relative weight of each difficulty.
+     */
+    public void setDifficultyMix(int[] difficulties, int[] weights) {
+        if (difficulties.length == 0 || difficulties.length != weights.length) {
+            throw new IllegalArgumentException("Need one weight per difficulty !!");
+        }
+        int[] cumulative = new int[weights.length];
+        int total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (difficulties[i] < 0 || weights[i] <= 0) {
+                throw new IllegalArgumentException("Need difficulties >= 0 and weights > 0 !!");
+            }
+            total += weights[i];
+            cumulative[i] = total;
+        }
+        this.difficulties = difficulties.clone();
+        this.cumulativeWeights = cumulative;
+    }
+
+    /**
+     * setter for the transactions field.
+     * @param transactions number of transactions to send.
+     */
+    public void setTransactions(int transactions) {
+        if (transactions <= 0) {
+            throw new IllegalArgumentException("Transactions must be > 0 !!");
+        }
+        this.transactions = transactions;
+    }
+
+    /**
+     * setter for the replay log field.
+     * @param replayLog file of recorded transactions, one per line, null to generate them.
+     */
+    public void setReplayLog(Path replayLog) {
+        this.replayLog = replayLog;
+    }
+
+    /**
+     * setter for the corrupt every field.
+     * @param corruptEvery blocks between two corruptions, 0 for none.
+     */
+    public void setCorruptEvery(int corruptEvery) {
+        this.corruptEvery = Math.max(0, corruptEvery);
+    }
+
+    /**
+     * setter for the validate every field.
+     * @param validateEvery blocks between two validation samples, 0 for one at the end only.
+     */
+    public void setValidateEvery(int validateEvery) {
+        this.validateEvery = Math.max(0, validateEvery);
+    }
+
+    /**
+     * Seeds the payloads, difficulties and corrupted blocks so a run can be repeated.
+     * @param seed the seed.
+     */
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+    /**
+     * Sends the transactions, waits for all of them to be mined and reports.
+     * @return LoadReport - what the run measured.
+     * @throws IOException if the replay log cannot be read.
+     */
+    public LoadReport run() throws IOException {
+        Iterator<String> replay = replayLog == null ? null
+                : Files.readAllLines(replayLog, StandardCharsets.UTF_8).iterator();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        long maxHeap = 0;
+        Histogram latency = new Histogram();
+        AtomicLong failed = new AtomicLong();
+        List<CompletableFuture<Block>> pending = new ArrayList<>(transactions);
+        List<LoadReport.ValidationSample> validations = new ArrayList<>();
+        List<RepairReport> repairs = new ArrayList<>();
+        int sizeBefore = chain.getChainSize();
+        int nextCorruption = corruptEvery;
+        int nextValidation = validateEvery;
+        long intervalNanos = rate == 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long startNanos = System.nanoTime();
+        int sent = 0;
+        for (; sent < transactions; sent++) {
+            String data;
+            if (replay == null) {
+                data = generate(sent);
+            } else if (replay.hasNext()) {
+                data = replay.next();
+            } else {
+                break;
+            }
+            long dueNanos = startNanos + sent * intervalNanos;
+            long wait;
+            while ((wait = dueNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            // sending late is part of the latency, the schedule does not move.
+            long sentFrom = intervalNanos == 0 ? System.nanoTime() : dueNanos;
+            CompletableFuture<Block> added = pipeline.submit(data, nextDifficulty());
+            added.whenComplete((block, error) -> {
+                if (error != null) {
+                    failed.incrementAndGet();
+                } else {
+                    latency.record(System.nanoTime() - sentFrom);
+                }
+            });
+            pending.add(added);
+            maxHeap = Math.max(maxHeap, memory.getHeapMemoryUsage().getUsed());
+            int blocksAdded = chain.getChainSize() - sizeBefore;
+            if (corruptEvery > 0 && blocksAdded >= nextCorruption) {
+                nextCorruption += corruptEvery;
+                RepairReport repair = corruptAndRepair();
+                if (repair != null) {
+                    repairs.add(repair);
+                }
+            }
+            if (validateEvery > 0 && blocksAdded >= nextValidation) {
+                nextValidation += validateEvery;
+                validations.add(validate());
+            }
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+                .exceptionally(error -> null).join();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        validations.add(validate());
+        long endHeap = memory.getHeapMemoryUsage().getUsed();
+        return new LoadReport(sent, failed.get(), chain.getChainSize() - sizeBefore, elapsedMillis, latency,
+                Math.max(maxHeap, endHeap), endHeap, gcCount() - gcCountBefore, gcMillis() - gcMillisBefore,
+                validations, repairs);
+    }
+
+    /**
+     * Changes the data of a random block after the checkpoint and repairs the chain.
+     * @return RepairReport - the repair, null if no block could be corrupted.
+     */
+    private RepairReport corruptAndRepair() {
+        Checkpoint checkpoint = chain.getCheckpoint();
+        int first = checkpoint == null ? 0 : checkpoint.getIndex() + 1;
+        int size = chain.getChainSize();
+        if (first >= size) {
+            return null;
+        }
+        int position = first + random.nextInt(size - first);
+        try {
+            chain.getBlock(position).setData("corrupted by the load generator " + position);
+        } catch (IllegalStateException e) {
+            // a checkpoint sealed the block meanwhile.
+            return null;
+        }
+        return chain.repairChain();
+    }
+
+    /**
+     * Times a validation of every block after the checkpoint, as if none was verified yet.
+     * The blocks of a snapshot are copied and hashed from their fields, so cached hashes
+     * are not reused and the live chain's verified watermark is left alone.
+     */
+    private LoadReport.ValidationSample validate() {
+        ChainSnapshot snapshot = chain.snapshot();
+        Checkpoint checkpoint = chain.getCheckpoint();
+        int size = snapshot.getSize();
+        int start = Math.min(size, checkpoint == null ? 0 : checkpoint.getIndex() + 1);
+        long startNanos = System.nanoTime();
+        Block[] copies = new Block[size - start];
+        String[] hashes = new String[copies.length];
+        IntStream positions = IntStream.range(0, copies.length);
+        if (chain.isParallelValidation() && copies.length >= BlockChain.PARALLEL_VALIDATION_THRESHOLD) {
+            positions = positions.parallel();
+        }
+        positions.forEach(k -> {
+            Block live = snapshot.getBlock(start + k);
+            // a checkpoint made meanwhile may have pruned it, its hash is then vouched for.
+            copies[k] = live.isPruned() ? live : live.copy();
+            hashes[k] = copies[k].calculateHash();
+        });
+        // the same checks as the chain's validation, on the fresh hashes.
+        String previousHash = start == 0 ? "" : snapshot.getBlock(start - 1).getHash();
+        int firstInvalid = -1;
+        for (int k = 0; k < copies.length; k++) {
+            Block block = copies[k];
+            if (!block.getTarget().isMetBy(hashes[k]) || !block.hasValidMerkleRoot()
+                    || (start + k > 0 && !block.getPreviousHash().equals(previousHash))) {
+                firstInvalid = start + k;
+                break;
+            }
+            previousHash = hashes[k];
+        }
+        return new LoadReport.ValidationSample(size, firstInvalid, System.nanoTime() - startNanos);
+    }
+
+    private String generate(int sequence) {
+        StringBuilder data = new StringBuilder(payloadSize);
+        data.append(sequence).append(':');
+        while (data.length() < payloadSize) {
+            data.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+        }
+        data.setLength(payloadSize);
+        return data.toString();
+    }
+
+    private int nextDifficulty() {
+        int draw = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int slot = Arrays.binarySearch(cumulativeWeights, draw + 1);
+        return difficulties[slot >= 0 ? slot : -slot - 1];
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    /**
+     * Runs the generator against a new chain and prints the report.
+     * @param args --rate n (per second, default unthrottled), --payload n (characters, 64),
+     * --difficulty d:w,d:w (difficulty mix, 2:1), --transactions n (1000), --replay file,
+     * --corrupt-every n (blocks), --validate-every n (blocks), --seed n and --store directory.
+     * @throws IOException if the store or replay log cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        String directory = null;
+        List<String[]> options = new ArrayList<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if ("--store".equals(args[i])) {
+                directory = args[i + 1];
+            } else {
+                options.add(new String[] {args[i], args[i + 1]});
+            }
+        }
+        BlockChain chain = directory == null ? new BlockChain() : BlockChain.open(Paths.get(directory));
+        chain.setMiner(new ParallelMiner());
+        chain.setParallelValidation(true);
+        if (chain.getChainSize() == 0) {
+            chain.addBlock(new Block(0, chain.getTime(), "", 2));
+        }
+        try (MiningPipeline pipeline = new MiningPipeline(chain, 64)) {
+            LoadGenerator generator = new LoadGenerator(chain, pipeline);
+            for (String[] option : options) {
+                String value = option[1];
+                switch (option[0]) {
+                    case "--rate":
+                        generator.setRate(Double.parseDouble(value));
+                        break;
+                    case "--payload":
+                        generator.setPayloadSize(Integer.parseInt(value));
+                        break;
+                    case "--difficulty":
+                        String[] entries = value.split(",");
+                        int[] mix = new int[entries.length];
+                        int[] weights = new int[entries.length];
+                        for (int i = 0; i < entries.length; i++) {
+                            String[] parts = entries[i].split(":");
+                            mix[i] = Integer.parseInt(parts[0].trim());
+                            weights[i] = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+                        }
+                        generator.setDifficultyMix(mix, weights);
+                        break;
+                    case "--transactions":
+                        generator.setTransactions(Integer.parseInt(value));
+                        break;
+                    case "--replay":
+                        generator.setReplayLog(Paths.get(value));
+                        break;
+                    case "--corrupt-every":
+                        generator.setCorruptEvery(Integer.parseInt(value));
+                        break;
+                    case "--validate-every":
+                        generator.setValidateEvery(Integer.parseInt(value));
+                        break;
+                    case "--seed":
+                        generator.setSeed(Long.parseLong(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + option[0]);
+                }
+            }
+            System.out.println(generator.run());
+        } finally {
+            chain.close();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.soham;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * This class describes a run of {@link LoadGenerator}: throughput, end-to-end latency
+ * of the transactions, heap and GC activity, full validation time at the chain sizes
+ * it was sampled at, and the repairs of the corruption scenarios.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class LoadReport {
+
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    // transactions submitted, and those whose block could not be added.
+    private final long transactions;
+    private final long failed;
+
+    // blocks added during the run.
+    private final long blocks;
+
+    // wall clock time of the run.
+    private final long elapsedMillis;
+
+    // from the time each transaction was due to be sent until its block was on the chain, in nanoseconds.
+    private final Histogram latency;
+
+    // largest heap use sampled and heap use at the end, in bytes.
+    private final long maxHeapBytes;
+    private final long endHeapBytes;
+
+    // collections during the run and the time they took.
+    private final long gcCount;
+    private final long gcMillis;
+
+    // full validation time sampled as the chain grew.
+    private final List<ValidationSample> validations;
+
+    // repairs of the corrupted blocks.
+    private final List<RepairReport> repairs;
+
+    /**
+     * Constructor.
+     * @param transactions
+     * @param failed
+     * @param blocks
+     * @param elapsedMillis
+     * @param latency
+     * @param maxHeapBytes
+     * @param endHeapBytes
+     * @param gcCount
+     * @param gcMillis
+     * @param validations
+     * @param repairs
+     */
+    LoadReport(long transactions, long failed, long blocks, long elapsedMillis, Histogram latency,
+            long maxHeapBytes, long endHeapBytes, long gcCount, long gcMillis,
+            List<ValidationSample> validations, List<RepairReport> repairs) {
+        this.transactions = transactions;
+        this.failed = failed;
+        this.blocks = blocks;
+        this.elapsedMillis = elapsedMillis;
+        this.latency = latency;
+        this.maxHeapBytes = maxHeapBytes;
+        this.endHeapBytes = endHeapBytes;
+        this.gcCount = gcCount;
+        this.gcMillis = gcMillis;
+        this.validations = Collections.unmodifiableList(new ArrayList<>(validations));
+        this.repairs = Collections.unmodifiableList(new ArrayList<>(repairs));
+    }
+
+    /**
+     * getter for the transactions field.
+     * @return
+     */
+    public long getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * getter for the failed field.
+     * @return
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * getter for the blocks field.
+     * @return
+     */
+    public long getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * getter for the elapsed millis field.
+     * @return
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * Blocks added per second over the whole run.
+     * @return double - sustained blocks per second.
+     */
+    public double getBlocksPerSecond() {
+        return elapsedMillis == 0 ? 0 : blocks * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * Returns a percentile of the end-to-end latency.
+     * @param percent the percentile, between 0 and 100.
+     * @return double - latency in milliseconds.
+     */
+    public double getLatencyMillis(double percent) {
+        return latency.getPercentile(percent) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * getter for the max heap bytes field.
+     * @return
+     */
+    public long getMaxHeapBytes() {
+        return maxHeapBytes;
+    }
+
+    /**
+     * getter for the end heap bytes field.
+     * @return
+     */
+    public long getEndHeapBytes() {
+        return endHeapBytes;
+    }
+
+    /**
+     * getter for the gc count field.
+     * @return
+     */
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    /**
+     * getter for the gc millis field.
+     * @return
+     */
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    /**
+     * getter for the validations field.
+     * @return List - the samples, in chain size order.
+     */
+    public List<ValidationSample> getValidations() {
+        return validations;
+    }
+
+    /**
+     * getter for the repairs field.
+     * @return
+     */
+    public List<RepairReport> getRepairs() {
+        return repairs;
+    }
+
+    /**
+     * Returns a JSON string.
+     * @return String - in JSON format.
+     */
+    @Override
+    public String toString() {
+        JSONObject json = new JSONObject();
+        json.put("transactions", transactions);
+        json.put("failed", failed);
+        json.put("blocks", blocks);
+        json.put("elapsed millis", elapsedMillis);
+        json.put("blocks per second", getBlocksPerSecond());
+        json.put("latency millis p50", getLatencyMillis(50));
+        json.put("latency millis p90", getLatencyMillis(90));
+        json.put("latency millis p99", getLatencyMillis(99));
+        json.put("latency millis max", latency.getMax() / NANOS_PER_MILLI);
+        json.put("max heap bytes", maxHeapBytes);
+        json.put("end heap bytes", endHeapBytes);
+        json.put("gc count", gcCount);
+        json.put("gc millis", gcMillis);
+        JSONArray validationArray = new JSONArray();
+        for (ValidationSample sample : validations) {
+            validationArray.put(new JSONObject(sample.toString()));
+        }
+        json.put("validations", validationArray);
+        JSONArray repairArray = new JSONArray();
+        for (RepairReport repair : repairs) {
+            repairArray.put(new JSONObject(repair.toString()));
+        }
+        json.put("repairs", repairArray);
+        return json.toString();
+    }
+
+    /**
+     * The time a full validation took at one chain size.
+     */
+    public static final class ValidationSample {
+
+        // number of blocks when the validation ran.
+        private final int chainSize;
+
+        // its result, -1 if the chain was valid.
+        private final int firstInvalidBlock;
+
+        // in nanoseconds.
+        private final long nanos;
+
+        ValidationSample(int chainSize, int firstInvalidBlock, long nanos) {
+            this.chainSize = chainSize;
+            this.firstInvalidBlock = firstInvalidBlock;
+            this.nanos = nanos;
+        }
+
+        /**
+         * getter for the chain size field.
+         * @return
+         */
+        public int getChainSize() {
+            return chainSize;
+        }
+
+        /**
+         * getter for the first invalid block field.
+         * @return int - index of the first invalid block, -1 if the chain was valid.
+         */
+        public int getFirstInvalidBlock() {
+            return firstInvalidBlock;
+        }
+
+        /**
+         * getter for the validation time.
+         * @return double - milliseconds.
+         */
+        public double getMillis() {
+            return nanos / NANOS_PER_MILLI;
+        }
+
+        /**
+         * Returns a JSON string.
+         * @return String - in JSON format.
+         */
+        @Override
+        public String toString() {
+            JSONObject json = new JSONObject();
+            json.put("chain size", chainSize);
+            json.put("first invalid block", firstInvalidBlock);
+            json.put("millis", getMillis());
+            return json.toString();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.soham;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class collects incoming transactions and seals them into a batched Block
+ * once the batch reaches a size limit or its oldest transaction reaches an age limit,
+ * so one proof of work covers the whole batch. Transactions can keep arriving while
+ * a sealed batch is being mined, and sealed batches reach the chain in the order
+ * they were sealed.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class Mempool {
+
+    private static final Logger LOGGER = Logger.getLogger(Mempool.class.getName());
+
+    // the chain sealed batches are added to.
+    private final BlockChain chain;
+
+    // number of transactions that seals a batch.
+    private final int maxBatchSize;
+
+    // age of the oldest transaction that seals a batch.
+    private final long maxAgeMillis;
+
+    // difficulty of the sealed blocks.
+    private final int difficulty;
+
+    // transactions waiting for the next block.
+    private List<String> pending = new ArrayList<>();
+
+    // arrival time of the oldest pending transaction.
+    private long oldestArrival;
+
+    // sealed batches waiting to be mined, oldest first.
+    private final Queue<Batch> sealed = new ArrayDeque<>();
+
+    // sealed batches are mined one at a time.
+    private final Object sealLock = new Object();
+
+    // timer sealing batches that got too old, only running after startAgeTimer.
+    private ScheduledExecutorService ageTimer;
+
+    /**
+     * Constructor.
+     * @param chain the chain to add sealed blocks to.
+     * @param maxBatchSize number of transactions that seals a batch.
+     * @param maxAgeMillis age of the oldest transaction that seals a batch.
+     * @param difficulty difficulty of the sealed blocks.
+     */
+    public Mempool(BlockChain chain, int maxBatchSize, long maxAgeMillis, int difficulty) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be > 0 !!");
+        }
+        this.chain = chain;
+        this.maxBatchSize = maxBatchSize;
+        this.maxAgeMillis = maxAgeMillis;
+        this.difficulty = difficulty;
+    }
+
+    /**
+     * Adds a transaction, sealing and mining the batch when it is full.
+     * @param transaction the transaction.
+     * @return Block - the block mined because of this transaction, null if the batch is not full yet.
+     */
+    public Block add(String transaction) {
+        Batch batch = null;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                oldestArrival = System.currentTimeMillis();
+            }
+            pending.add(transaction);
+            if (pending.size() >= maxBatchSize) {
+                batch = takeBatch();
+            }
+        }
+        return batch == null ? null : mine(batch);
+    }
+
+    /**
+     * Seals the batch if its oldest transaction reached the age limit.
+     * @return Block - the mined block, null if nothing was sealed.
+     */
+    public Block sealIfExpired() {
+        Batch batch = null;
+        synchronized (this) {
+            if (!pending.isEmpty() && System.currentTimeMillis() - oldestArrival >= maxAgeMillis) {
+                batch = takeBatch();
+            }
+        }
+        return batch == null ? null : mine(batch);
+    }
+
+    /**
+     * Seals whatever is pending, regardless of size or age.
+     * @return Block - the mined block, null if nothing was pending.
+     */
+    public Block seal() {
+        Batch batch = null;
+        synchronized (this) {
+            if (!pending.isEmpty()) {
+                batch = takeBatch();
+            }
+        }
+        return batch == null ? null : mine(batch);
+    }
+
+    /**
+     * Returns the number of transactions waiting for a block.
+     * @return int - pending transactions.
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Starts a daemon timer that seals batches reaching the age limit even when no
+     * new transaction arrives.
+     */
+    public synchronized void startAgeTimer() {
+        if (ageTimer != null) {
+            return;
+        }
+        ageTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mempool-age-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, maxAgeMillis / 4);
+        ageTimer.scheduleWithFixedDelay(() -> {
+            // a task that throws is never run again, keep sealing after a failed block.
+            try {
+                sealIfExpired();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not add an expired batch", e);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the age timer, pending transactions stay in the pool.
+     */
+    public synchronized void stopAgeTimer() {
+        if (ageTimer != null) {
+            ageTimer.shutdownNow();
+            ageTimer = null;
+        }
+    }
+
+    /**
+     * Seals the pending transactions and queues them for mining. Caller holds this monitor.
+     */
+    private Batch takeBatch() {
+        Batch batch = new Batch(pending);
+        pending = new ArrayList<>();
+        sealed.add(batch);
+        return batch;
+    }
+
+    /**
+     * Mines the queued batches in order up to and including the given one. A batch
+     * sealed earlier by another thread is mined first, by whichever thread gets here first.
+     */
+    private Block mine(Batch batch) {
+        synchronized (sealLock) {
+            while (batch.block == null && batch.failure == null) {
+                Batch next;
+                synchronized (this) {
+                    next = sealed.poll();
+                }
+                try {
+                    // the chain sets the index under its own lock.
+                    Block block = new Block(0, chain.getTime(), next.transactions, difficulty);
+                    chain.addBlock(block);
+                    next.block = block;
+                } catch (RuntimeException e) {
+                    next.failure = e;
+                }
+            }
+            if (batch.failure != null) {
+                throw batch.failure;
+            }
+            return batch.block;
+        }
+    }
+
+    /**
+     * A sealed batch and the outcome of mining it, both guarded by the seal lock.
+     */
+    private static final class Batch {
+
+        private final List<String> transactions;
+        private Block block;
+        private RuntimeException failure;
+
+        Batch(List<String> transactions) {
+            this.transactions = transactions;
+        }
+    }
+}
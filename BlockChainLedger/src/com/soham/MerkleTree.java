@@ -0,0 +1,133 @@
+package com.soham;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class is a Merkle tree over the transactions of a batched Block.
+ * Leaves are SHA-256(0x00 || transaction) and inner nodes SHA-256(0x01 || left || right),
+ * the prefixes keep a leaf from being passed off as an inner node. A level with an odd
+ * number of nodes carries its last node up unpaired; pairing it with itself would give
+ * [a, b, c] and [a, b, c, c] the same root (CVE-2012-2459). The root is what the block
+ * header commits to, and an inclusion proof is the list of sibling hashes from leaf to
+ * root, with no entry at the levels where the node has no sibling.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public final class MerkleTree {
+
+    private static final byte LEAF = 0;
+    private static final byte NODE = 1;
+
+    // levels.get(0) are the leaves, the last level holds only the root.
+    private final List<byte[][]> levels;
+
+    /**
+     * Constructor, hashes every transaction and builds the tree.
+     * @param transactions the transactions, at least one.
+     */
+    public MerkleTree(List<String> transactions) {
+        if (transactions.isEmpty()) {
+            throw new IllegalArgumentException("A Merkle tree needs at least one transaction !!");
+        }
+        byte[][] leaves = new byte[transactions.size()][];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = leafHash(transactions.get(i));
+        }
+        levels = new ArrayList<>();
+        levels.add(leaves);
+        byte[][] level = leaves;
+        while (level.length > 1) {
+            byte[][] parents = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < parents.length; i++) {
+                // the last node of an odd level moves up as it is.
+                parents[i] = 2 * i + 1 < level.length ? nodeHash(level[2 * i], level[2 * i + 1]) : level[2 * i];
+            }
+            levels.add(parents);
+            level = parents;
+        }
+    }
+
+    /**
+     * Returns the root of the tree.
+     * @return String - hex format of the root hash.
+     */
+    public String getRoot() {
+        return BlockHasher.toHex(levels.get(levels.size() - 1)[0]);
+    }
+
+    /**
+     * Returns the sibling hashes needed to prove that a transaction is in the tree.
+     * @param position position of the transaction in the batch.
+     * @return List - hex sibling hashes, from the leaf level up.
+     */
+    public List<String> getProof(int position) {
+        if (position < 0 || position >= levels.get(0).length) {
+            throw new IndexOutOfBoundsException("No transaction " + position);
+        }
+        List<String> proof = new ArrayList<>(levels.size() - 1);
+        int node = position;
+        for (int depth = 0; depth < levels.size() - 1; depth++) {
+            byte[][] level = levels.get(depth);
+            int sibling = node ^ 1;
+            if (sibling < level.length) {
+                proof.add(BlockHasher.toHex(level[sibling]));
+            }
+            node /= 2;
+        }
+        return Collections.unmodifiableList(proof);
+    }
+
+    /**
+     * Checks an inclusion proof in O(log n) hashes.
+     * @param transaction the transaction.
+     * @param position position of the transaction in the batch.
+     * @param count number of transactions in the batch, it fixes where the unpaired nodes are.
+     * @param proof sibling hashes from {@link #getProof(int)}.
+     * @param root hex root the block commits to.
+     * @return boolean - true if the transaction is at that position under the root.
+     */
+    public static boolean verifyProof(String transaction, int position, int count, List<String> proof, String root) {
+        if (position < 0 || position >= count) {
+            return false;
+        }
+        byte[] hash = leafHash(transaction);
+        int node = position;
+        int width = count;
+        int used = 0;
+        while (width > 1) {
+            int sibling = node ^ 1;
+            if (sibling < width) {
+                if (used == proof.size()) {
+                    return false;
+                }
+                byte[] siblingHash = BlockHasher.fromHex(proof.get(used++));
+                if (siblingHash == null) {
+                    return false;
+                }
+                hash = (node & 1) == 0 ? nodeHash(hash, siblingHash) : nodeHash(siblingHash, hash);
+            }
+            node /= 2;
+            width = (width + 1) / 2;
+        }
+        return used == proof.size() && Arrays.equals(hash, BlockHasher.fromHex(root));
+    }
+
+    private static byte[] leafHash(String transaction) {
+        MessageDigest digest = BlockHasher.sha256();
+        digest.update(LEAF);
+        return digest.digest(transaction.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] nodeHash(byte[] left, byte[] right) {
+        MessageDigest digest = BlockHasher.sha256();
+        digest.update(NODE);
+        digest.update(left);
+        return digest.digest(right);
+    }
+}
@@ -0,0 +1,37 @@
+package com.soham;
+
+/**
+ * This interface is told about mining, validation and repair as they happen, so
+ * metrics can be sent elsewhere than JMX. Listeners run on the thread doing the
+ * work and should return quickly. Every method does nothing by default.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public interface MetricsListener {
+
+    /**
+     * A block was mined.
+     * @param block the block, with its winning nonce.
+     * @param attempts hashes tried for it, by all workers.
+     * @param nanos mining time.
+     */
+    default void blockMined(Block block, long attempts, long nanos) {
+    }
+
+    /**
+     * The chain was validated.
+     * @param firstInvalidBlock first invalid block, -1 if the chain was valid.
+     * @param nanos validation time.
+     */
+    default void chainValidated(int firstInvalidBlock, long nanos) {
+    }
+
+    /**
+     * The chain was repaired.
+     * @param report what the repair did.
+     * @param nanos repair time.
+     */
+    default void chainRepaired(RepairReport report, long nanos) {
+    }
+}
@@ -0,0 +1,338 @@
+package com.soham;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This class adds blocks to a chain asynchronously. Submissions wait in a bounded
+ * queue in front of two stages: a preparer that builds the next block (including
+ * the Merkle tree of a batch) while the current one is mined, and a miner that adds
+ * prepared blocks to the chain one at a time. When the queue is full, submit waits
+ * for a free slot, so callers slow down to the mining rate instead of piling up work.
+ * The chain sets the index of each block under its write lock, so blocks appended
+ * by other writers (a replicating node, a mempool) meanwhile do not break it.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class MiningPipeline implements AutoCloseable {
+
+    // marks the end of the submissions for both stages.
+    private static final Submission SHUTDOWN = new Submission(null, null, null, 0, false, Long.MAX_VALUE);
+
+    // the chain blocks are added to.
+    private final BlockChain chain;
+
+    // maximum number of submissions waiting or being mined.
+    private final int capacity;
+
+    // one permit per free slot, released once a submission is done.
+    private final Semaphore slots;
+
+    // submissions waiting for the preparer, bounded by the slots.
+    private final BlockingQueue<Submission> submissions = new LinkedBlockingQueue<>();
+
+    // the block prepared ahead while the miner works on the current one.
+    private final BlockingQueue<Submission> prepared = new ArrayBlockingQueue<>(1);
+
+    private final Thread preparer;
+    private final Thread miner;
+
+    // set once, no submissions are accepted afterwards.
+    private boolean shutdown;
+
+    /**
+     * Constructor, starts both stages.
+     * @param chain the chain to add blocks to.
+     * @param capacity maximum number of submissions waiting or being mined.
+     */
+    public MiningPipeline(BlockChain chain, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be > 0 !!");
+        }
+        this.chain = chain;
+        this.capacity = capacity;
+        this.slots = new Semaphore(capacity);
+        preparer = new Thread(this::prepareLoop, "mining-pipeline-prepare");
+        miner = new Thread(this::mineLoop, "mining-pipeline-mine");
+        preparer.setDaemon(true);
+        miner.setDaemon(true);
+        preparer.start();
+        miner.start();
+        chain.getMetrics().setQueueDepth(this::getInFlight);
+    }
+
+    /**
+     * Queues a single transaction block, waiting for a free slot if the queue is full.
+     * @param data the transaction.
+     * @param difficulty difficulty of the block, at least 0.
+     * @return CompletableFuture - completed with the block once it is on the chain.
+     * @throws IllegalArgumentException if the difficulty is negative.
+     * @throws RejectedExecutionException if the pipeline is shut down or the caller is interrupted.
+     */
+    public CompletableFuture<Block> submit(String data, int difficulty) {
+        return enqueue(new Submission(data, null, chain.getTime(), checkDifficulty(difficulty), false,
+                Long.MAX_VALUE));
+    }
+
+    /**
+     * Queues a single transaction block that is given up if its proof of work takes
+     * longer than a time limit, waiting for a free slot if the queue is full.
+     * @param data the transaction.
+     * @param difficulty difficulty of the block, at least 0.
+     * @param timeout the maximum time to mine, counted from when its mining starts.
+     * @param unit unit of the timeout.
+     * @return CompletableFuture - completed with the block once it is on the chain,
+     * or exceptionally with a TimeoutException if no good hash was found in time.
+     * @throws IllegalArgumentException if the difficulty is negative.
+     * @throws RejectedExecutionException if the pipeline is shut down or the caller is interrupted.
+     */
+    public CompletableFuture<Block> submit(String data, int difficulty, long timeout, TimeUnit unit) {
+        return enqueue(new Submission(data, null, chain.getTime(), checkDifficulty(difficulty), false,
+                unit.toNanos(timeout)));
+    }
+
+    /**
+     * Queues a single transaction block mined at the target the chain's retargeter
+     * picks when the block's turn comes, waiting for a free slot if the queue is full.
+     * @param data the transaction.
+     * @return CompletableFuture - completed with the block once it is on the chain,
+     * or exceptionally if the chain has no retargeter.
+     * @throws RejectedExecutionException if the pipeline is shut down or the caller is interrupted.
+     */
+    public CompletableFuture<Block> submit(String data) {
+        return enqueue(new Submission(data, null, chain.getTime(), 0, true, Long.MAX_VALUE));
+    }
+
+    /**
+     * Queues a single transaction block mined at the chain's next target that is given
+     * up if its proof of work takes longer than a time limit.
+     * @param data the transaction.
+     * @param timeout the maximum time to mine, counted from when its mining starts.
+     * @param unit unit of the timeout.
+     * @return CompletableFuture - completed with the block once it is on the chain,
+     * or exceptionally if no good hash was found in time or the chain has no retargeter.
+     * @throws RejectedExecutionException if the pipeline is shut down or the caller is interrupted.
+     */
+    public CompletableFuture<Block> submit(String data, long timeout, TimeUnit unit) {
+        return enqueue(new Submission(data, null, chain.getTime(), 0, true, unit.toNanos(timeout)));
+    }
+
+    /**
+     * Queues a batched block, waiting for a free slot if the queue is full.
+     * @param transactions the transactions, at least one.
+     * @param difficulty difficulty of the block, at least 0.
+     * @return CompletableFuture - completed with the block once it is on the chain.
+     * @throws IllegalArgumentException if the difficulty is negative.
+     * @throws RejectedExecutionException if the pipeline is shut down or the caller is interrupted.
+     */
+    public CompletableFuture<Block> submit(List<String> transactions, int difficulty) {
+        return enqueue(new Submission(null, new ArrayList<>(transactions), chain.getTime(),
+                checkDifficulty(difficulty), false, Long.MAX_VALUE));
+    }
+
+    /**
+     * Returns the number of submissions waiting or being mined.
+     * @return int - in flight submissions.
+     */
+    public int getInFlight() {
+        return capacity - slots.availablePermits();
+    }
+
+    /**
+     * Stops accepting submissions, the queued ones are still mined.
+     */
+    public synchronized void shutdown() {
+        if (!shutdown) {
+            shutdown = true;
+            submissions.add(SHUTDOWN);
+        }
+    }
+
+    /**
+     * Stops accepting submissions and cancels the queued ones. The block being
+     * mined, and the one prepared ahead of it, are still added.
+     * @return int - number of cancelled submissions.
+     */
+    public int shutdownNow() {
+        List<Submission> cancelled = new ArrayList<>();
+        synchronized (this) {
+            shutdown = true;
+            submissions.drainTo(cancelled);
+            submissions.add(SHUTDOWN);
+        }
+        int count = 0;
+        for (Submission submission : cancelled) {
+            if (submission != SHUTDOWN) {
+                submission.future.completeExceptionally(new CancellationException("Mining pipeline shut down"));
+                slots.release();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Waits for the queued submissions to be mined after a shutdown.
+     * @param timeout longest time to wait.
+     * @param unit unit of the timeout.
+     * @return boolean - true if both stages finished.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        preparer.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        miner.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        return !preparer.isAlive() && !miner.isAlive();
+    }
+
+    /**
+     * Shuts down and waits for the queued submissions to be mined.
+     */
+    @Override
+    public void close() {
+        shutdown();
+        try {
+            preparer.join();
+            miner.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int checkDifficulty(int difficulty) {
+        if (difficulty < 0) {
+            throw new IllegalArgumentException("Difficulty must be >= 0 !!");
+        }
+        return difficulty;
+    }
+
+    private CompletableFuture<Block> enqueue(Submission submission) {
+        try {
+            // backpressure, the caller waits here while the pipeline is full.
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the mining queue", e);
+        }
+        synchronized (this) {
+            if (shutdown) {
+                slots.release();
+                throw new RejectedExecutionException("Mining pipeline is shut down !!");
+            }
+            submissions.add(submission);
+        }
+        return submission.future;
+    }
+
+    private void prepareLoop() {
+        try {
+            while (true) {
+                Submission submission = submissions.take();
+                if (submission != SHUTDOWN) {
+                    try {
+                        submission.prepare();
+                    } catch (RuntimeException e) {
+                        submission.future.completeExceptionally(e);
+                        slots.release();
+                        continue;
+                    }
+                }
+                // waits while the miner is still busy with the block before the prepared one.
+                prepared.put(submission);
+                if (submission == SHUTDOWN) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void mineLoop() {
+        try {
+            while (true) {
+                Submission submission = prepared.take();
+                if (submission == SHUTDOWN) {
+                    return;
+                }
+                try {
+                    // the caller may have cancelled the future while it was queued.
+                    if (!submission.future.isDone()) {
+                        if (submission.autoTarget) {
+                            chain.addBlockAtNextTarget(submission.block, submission.timeoutNanos, TimeUnit.NANOSECONDS);
+                        } else {
+                            chain.addBlock(submission.block, submission.timeoutNanos, TimeUnit.NANOSECONDS);
+                        }
+                        submission.future.complete(submission.block);
+                    }
+                } catch (RuntimeException | TimeoutException e) {
+                    submission.future.completeExceptionally(e);
+                } finally {
+                    slots.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A queued request for one block.
+     */
+    private static final class Submission {
+
+        // the transaction of a single transaction block.
+        private final String data;
+
+        // the transactions of a batched block.
+        private final List<String> transactions;
+
+        // submission time, the time stamp of the block.
+        private final Timestamp timestamp;
+
+        private final int difficulty;
+
+        // mined at the chain's next target, the difficulty is then only a placeholder.
+        private final boolean autoTarget;
+
+        // longest the proof of work may take, in nanoseconds.
+        private final long timeoutNanos;
+
+        private final CompletableFuture<Block> future = new CompletableFuture<>();
+
+        // the block, built by the preparer.
+        private Block block;
+
+        Submission(String data, List<String> transactions, Timestamp timestamp, int difficulty,
+                boolean autoTarget, long timeoutNanos) {
+            this.data = data;
+            this.transactions = transactions;
+            this.timestamp = timestamp;
+            this.difficulty = difficulty;
+            this.autoTarget = autoTarget;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        /**
+         * Builds the block, hashing the Merkle tree of a batch, everything except
+         * the index and previous hash which are only known once the block before is mined.
+         */
+        void prepare() {
+            // an automatic target replaces the placeholder difficulty when the block is mined.
+            block = transactions == null
+                    ? new Block(0, timestamp, data, difficulty)
+                    : new Block(0, timestamp, transactions, difficulty);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.soham;
+
+import java.math.BigInteger;
+
+import org.json.JSONObject;
+
+/**
+ * This class represents the outcome of a parallel proof of work run.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class MiningResult {
+
+    // id of the worker that found the winning nonce.
+    private final int workerId;
+
+    // the winning nonce.
+    private final BigInteger nonce;
+
+    // the hex hash produced by the winning nonce.
+    private final String hash;
+
+    // number of nonces tried by all workers together.
+    private final long attempts;
+
+    // wall clock time spent mining.
+    private final long elapsedMillis;
+
+    /**
+     * Constructor.
+     * @param workerId
+     * @param nonce
+     * @param hash
+     * @param attempts
+     * @param elapsedMillis
+     */
+    MiningResult(int workerId, BigInteger nonce, String hash, long attempts, long elapsedMillis) {
+        this.workerId = workerId;
+        this.nonce = nonce;
+        this.hash = hash;
+        this.attempts = attempts;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * getter for the worker id field.
+     * @return
+     */
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * getter for the nonce field.
+     * @return
+     */
+    public BigInteger getNonce() {
+        return nonce;
+    }
+
+    /**
+     * getter for the hash field.
+     * @return
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * getter for the attempts field.
+     * @return
+     */
+    public long getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * getter for the elapsed millis field.
+     * @return
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * Returns a JSON string.
+     * @return String - in JSON format.
+     */
+    @Override
+    public String toString() {
+        JSONObject json = new JSONObject();
+        json.put("worker", workerId);
+        json.put("nonce", nonce);
+        json.put("hash", hash);
+        json.put("attempts", attempts);
+        json.put("elapsed millis", elapsedMillis);
+        return json.toString();
+    }
+}
@@ -0,0 +1,281 @@
+package com.soham;
+
+import java.math.BigInteger;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class runs the proof of work of a Block on several worker threads.
+ * Worker w tries the nonces start + w, start + w + workers, start + w + 2 * workers ...
+ * so the stripes never overlap, and every worker stops as soon as one of them
+ * finds a good hash.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class ParallelMiner {
+
+    // number of workers mining in parallel.
+    private final int workers;
+
+    // the pool the workers run on.
+    private final ExecutorService executor;
+
+    // only one block is mined at a time.
+    private final Object miningLock = new Object();
+
+    // the run in progress, if any, so that it can be cancelled from another thread.
+    private volatile MiningRun currentRun;
+
+    /**
+     * Constructor, uses one worker per available core.
+     */
+    public ParallelMiner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor.
+     * @param workers number of worker threads, must be > 0.
+     */
+    public ParallelMiner(int workers) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Number of workers must be > 0 !!");
+        }
+        this.workers = workers;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "parallel-miner-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * getter for the workers field.
+     * @return
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Mines the block without a time limit.
+     * @param block the block to mine, its nonce is set to the winning nonce.
+     * @return MiningResult - the worker and nonce that won.
+     * @throws InterruptedException if the calling thread is interrupted.
+     * @throws CancellationException if {@link #cancel()} was called.
+     */
+    public MiningResult mine(Block block) throws InterruptedException {
+        try {
+            return mine(block, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // cannot happen without a time limit.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Mines the block, giving up once the timeout has elapsed.
+     * @param block the block to mine, its nonce is set to the winning nonce.
+     * @param timeout the maximum time to mine.
+     * @param unit unit of the timeout.
+     * @return MiningResult - the worker and nonce that won.
+     * @throws InterruptedException if the calling thread is interrupted.
+     * @throws TimeoutException if no good hash was found in time, the block is left untouched.
+     * @throws CancellationException if {@link #cancel()} was called.
+     */
+    public MiningResult mine(Block block, long timeout, TimeUnit unit)
+            throws InterruptedException, TimeoutException {
+        return mine(block, timeout, unit, null);
+    }
+
+    /**
+     * Mines the block, the workers add the hashes they try to the metrics in batches.
+     * @param block the block to mine, its nonce is set to the winning nonce.
+     * @param timeout the maximum time to mine.
+     * @param unit unit of the timeout.
+     * @param metrics where to add the hashes, null to not count them.
+     * @return MiningResult - the worker and nonce that won.
+     * @throws InterruptedException if the calling thread is interrupted.
+     * @throws TimeoutException if no good hash was found in time, the block is left untouched.
+     * @throws CancellationException if {@link #cancel()} was called.
+     */
+    MiningResult mine(Block block, long timeout, TimeUnit unit, ChainMetrics metrics)
+            throws InterruptedException, TimeoutException {
+        synchronized (miningLock) {
+            MiningRun run = new MiningRun(block, metrics);
+            currentRun = run;
+            boolean found;
+            try {
+                for (int w = 0; w < workers; w++) {
+                    final int workerId = w;
+                    executor.execute(() -> run.work(workerId));
+                }
+                found = run.found.await(timeout, unit);
+            } finally {
+                // every worker has left its loop before the block is handed back, even when
+                // interrupted, rejected or shut down.
+                run.end();
+                currentRun = null;
+            }
+            MiningResult winner = run.winner.get();
+            if (winner != null) {
+                block.setNonce(winner.getNonce());
+                block.recordHash(winner.getHash());
+                // report the attempts of all workers, not only the winner's.
+                return new MiningResult(winner.getWorkerId(), winner.getNonce(), winner.getHash(),
+                        run.attempts.get(), System.currentTimeMillis() - run.startTime);
+            }
+            if (!found) {
+                throw new TimeoutException("No valid hash found within " + timeout + " " + unit);
+            }
+            throw new CancellationException("Mining was cancelled !!");
+        }
+    }
+
+    /**
+     * Cancels the mining run in progress, if any.
+     */
+    public void cancel() {
+        MiningRun run = currentRun;
+        if (run != null) {
+            run.stop();
+            run.found.countDown();
+        }
+    }
+
+    /**
+     * Stops the worker threads, a run in progress is cancelled. The miner cannot be used afterwards.
+     */
+    public void shutdown() {
+        // a run that starts after this is rejected by the pool, one that started before is cancelled.
+        executor.shutdownNow();
+        cancel();
+    }
+
+    /**
+     * State shared by the workers of a single mining run.
+     */
+    private final class MiningRun {
+
+        private final Block block;
+        private final boolean longStart;
+        private final long startNonce;
+        private final BigInteger bigStartNonce;
+        private final Target target;
+        private final long startTime = System.currentTimeMillis();
+        private final CountDownLatch found = new CountDownLatch(1);
+        private final CountDownLatch finished = new CountDownLatch(workers);
+        // a worker's slot is claimed by the worker when it starts, or by end() if it never did.
+        private final AtomicBoolean[] claimed = new AtomicBoolean[workers];
+        private final AtomicReference<MiningResult> winner = new AtomicReference<>();
+        private final AtomicLong attempts = new AtomicLong();
+        private final ChainMetrics metrics;
+        private volatile boolean stopped;
+
+        MiningRun(Block block, ChainMetrics metrics) {
+            this.block = block;
+            this.metrics = metrics;
+            this.longStart = block.hasLongNonce() && block.getLongNonce() <= Long.MAX_VALUE - workers;
+            this.startNonce = block.getLongNonce();
+            this.bigStartNonce = longStart ? null : block.getNonce();
+            this.target = block.getTarget();
+            for (int w = 0; w < workers; w++) {
+                claimed[w] = new AtomicBoolean();
+            }
+        }
+
+        void stop() {
+            stopped = true;
+        }
+
+        /**
+         * Stops the run and waits for the workers that started, those still queued, or
+         * dropped by a shut down pool, are counted as finished instead.
+         */
+        void end() {
+            stop();
+            for (AtomicBoolean slot : claimed) {
+                if (slot.compareAndSet(false, true)) {
+                    finished.countDown();
+                }
+            }
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    // the workers see stopped after at most one more hash.
+                    finished.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void work(int workerId) {
+            if (!claimed[workerId].compareAndSet(false, true)) {
+                // the run ended before this worker got a thread.
+                return;
+            }
+            long tried = 0;
+            // hashes tried since they were last added to the metrics.
+            int unflushed = 0;
+            try {
+                // each worker owns a hasher and steps its nonce digits in place.
+                // the nonce value is tracked as a long, BigInteger only past Long.MAX_VALUE.
+                BlockHasher hasher = new BlockHasher(block);
+                long candidate = startNonce + workerId;
+                boolean overflowed = !longStart;
+                if (longStart) {
+                    hasher.setNonce(candidate);
+                } else {
+                    hasher.setNonce(bigStartNonce.add(BigInteger.valueOf(workerId)));
+                }
+                while (!stopped) {
+                    byte[] generatedHash = hasher.digest();
+                    tried++;
+                    if (++unflushed == ChainMetrics.HASH_FLUSH_INTERVAL) {
+                        if (metrics != null) {
+                            metrics.addHashes(unflushed);
+                        }
+                        unflushed = 0;
+                    }
+                    if (target.isMetBy(generatedHash)) {
+                        stopped = true;
+                        BigInteger winningNonce = overflowed ? hasher.getNonce() : BigInteger.valueOf(candidate);
+                        MiningResult result = new MiningResult(workerId, winningNonce,
+                                BlockHasher.toHex(generatedHash), 0, 0);
+                        if (winner.compareAndSet(null, result)) {
+                            found.countDown();
+                        }
+                        return;
+                    }
+                    hasher.addToNonce(workers);
+                    if (candidate > Long.MAX_VALUE - workers) {
+                        overflowed = true;
+                    } else {
+                        candidate += workers;
+                    }
+                }
+            } finally {
+                if (metrics != null) {
+                    metrics.addHashes(unflushed);
+                }
+                attempts.addAndGet(tried);
+                finished.countDown();
+            }
+        }
+    }
+}
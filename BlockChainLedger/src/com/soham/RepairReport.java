@@ -0,0 +1,70 @@
+package com.soham;
+
+import org.json.JSONObject;
+
+/**
+ * This class describes what a call to {@link BlockChain#repairChain()} did.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class RepairReport {
+
+    // first block found invalid, -1 if the chain was already valid.
+    private final int firstInvalidBlock;
+
+    // number of blocks whose proof of work was run again.
+    private final int blocksReMined;
+
+    // wall clock time of the repair.
+    private final long elapsedMillis;
+
+    /**
+     * Constructor.
+     * @param firstInvalidBlock
+     * @param blocksReMined
+     * @param elapsedMillis
+     */
+    RepairReport(int firstInvalidBlock, int blocksReMined, long elapsedMillis) {
+        this.firstInvalidBlock = firstInvalidBlock;
+        this.blocksReMined = blocksReMined;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * getter for the first invalid block field.
+     * @return
+     */
+    public int getFirstInvalidBlock() {
+        return firstInvalidBlock;
+    }
+
+    /**
+     * getter for the blocks re-mined field.
+     * @return
+     */
+    public int getBlocksReMined() {
+        return blocksReMined;
+    }
+
+    /**
+     * getter for the elapsed millis field.
+     * @return
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * Returns a JSON string.
+     * @return String - in JSON format.
+     */
+    @Override
+    public String toString() {
+        JSONObject json = new JSONObject();
+        json.put("first invalid block", firstInvalidBlock);
+        json.put("blocks re-mined", blocksReMined);
+        json.put("elapsed millis", elapsedMillis);
+        return json.toString();
+    }
+}
@@ -0,0 +1,226 @@
+package com.soham;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Arrays;
+
+/**
+ * This class represents the proof of work target a block hash must meet.
+ * The check works on the raw digest bytes: a target of n leading zero bits checks
+ * n / 8 whole zero bytes and masks the high bits of the next one, so almost every
+ * attempt is rejected by looking at the first byte. A numeric target (like Bitcoin's)
+ * accepts any hash that, read as an unsigned 256 bit number, is at most the target.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public final class Target {
+
+    // number of bits in a SHA-256 hash.
+    private static final int HASH_BITS = 256;
+
+    // 2^256, the number of possible hashes.
+    private static final BigInteger HASH_SPACE = BigInteger.ONE.shiftLeft(HASH_BITS);
+
+    // number of leading zero bits every good hash has.
+    private final int leadingZeroBits;
+
+    // number of leading bytes that must be zero.
+    private final int fullZeroBytes;
+
+    // mask of the bits that must be zero in the byte after the full zero bytes.
+    private final int partialMask;
+
+    // 32 byte big endian maximum for numeric targets, null for leading zero targets.
+    private final byte[] maximum;
+
+    /**
+     * Constructor.
+     * @param leadingZeroBits
+     * @param maximum
+     */
+    private Target(int leadingZeroBits, byte[] maximum) {
+        this.leadingZeroBits = leadingZeroBits;
+        this.fullZeroBytes = leadingZeroBits / 8;
+        this.partialMask = (0xff << (8 - leadingZeroBits % 8)) & 0xff;
+        this.maximum = maximum;
+    }
+
+    /**
+     * Target of the classic difficulty, a number of leading zero hex digits.
+     * @param hexDigits number of leading zero hex digits.
+     * @return Target - the target.
+     */
+    public static Target ofHexDigits(int hexDigits) {
+        return ofLeadingZeroBits(hexDigits * 4);
+    }
+
+    /**
+     * Target of a number of leading zero bits, each bit doubles the expected work.
+     * @param bits number of leading zero bits, between 0 and 256.
+     * @return Target - the target.
+     */
+    public static Target ofLeadingZeroBits(int bits) {
+        if (bits < 0 || bits > HASH_BITS) {
+            throw new IllegalArgumentException("Leading zero bits must be between 0 and 256 !!");
+        }
+        return new Target(bits, null);
+    }
+
+    /**
+     * Numeric target, a hash is good when its unsigned value is at most the maximum.
+     * @param maximum the largest acceptable hash value, between 1 and 2^256 - 1.
+     * @return Target - the target.
+     */
+    public static Target ofValue(BigInteger maximum) {
+        if (maximum.signum() <= 0 || maximum.compareTo(HASH_SPACE) >= 0) {
+            throw new IllegalArgumentException("Target value must be between 1 and 2^256 - 1 !!");
+        }
+        byte[] raw = maximum.toByteArray();
+        byte[] bytes = new byte[BlockHasher.HASH_LENGTH];
+        // toByteArray may carry a leading sign byte, keep only the 32 low bytes.
+        int length = Math.min(raw.length, bytes.length);
+        System.arraycopy(raw, raw.length - length, bytes, bytes.length - length, length);
+        return new Target(HASH_BITS - maximum.bitLength(), bytes);
+    }
+
+    /**
+     * Numeric target that takes a given number of attempts on average, at any
+     * granularity, not only in steps of a hex digit or a bit.
+     * @param attempts expected attempts, at least 1.
+     * @return Target - the target.
+     */
+    public static Target ofExpectedAttempts(double attempts) {
+        if (!(attempts >= 1)) {
+            throw new IllegalArgumentException("Expected attempts must be >= 1 !!");
+        }
+        // maximum + 1 acceptable hashes out of 2^256.
+        BigInteger acceptable = new BigDecimal(HASH_SPACE)
+                .divide(BigDecimal.valueOf(attempts), MathContext.DECIMAL64).toBigInteger();
+        BigInteger maximum = acceptable.subtract(BigInteger.ONE);
+        if (maximum.signum() <= 0) {
+            maximum = BigInteger.ONE;
+        } else if (maximum.compareTo(HASH_SPACE) >= 0) {
+            maximum = HASH_SPACE.subtract(BigInteger.ONE);
+        }
+        return ofValue(maximum);
+    }
+
+    /**
+     * Checks whether the digest meets this target.
+     * @param hash raw SHA-256 digest.
+     * @return boolean - true if the hash is good enough.
+     */
+    public boolean isMetBy(byte[] hash) {
+        if (maximum != null) {
+            for (int i = 0; i < maximum.length; i++) {
+                int hashByte = hash[i] & 0xff;
+                int maxByte = maximum[i] & 0xff;
+                if (hashByte != maxByte) {
+                    return hashByte < maxByte;
+                }
+            }
+            return true;
+        }
+        for (int i = 0; i < fullZeroBytes; i++) {
+            if (hash[i] != 0) {
+                return false;
+            }
+        }
+        return partialMask == 0 || (hash[fullZeroBytes] & partialMask) == 0;
+    }
+
+    /**
+     * Checks whether a hex encoded hash meets this target.
+     * @param hexHash hash in hex format.
+     * @return boolean - true if the hash is good enough.
+     */
+    public boolean isMetBy(String hexHash) {
+        byte[] hash = BlockHasher.fromHex(hexHash);
+        if (hash == null || hash.length != BlockHasher.HASH_LENGTH) {
+            return false;
+        }
+        return isMetBy(hash);
+    }
+
+    /**
+     * getter for the leading zero bits field.
+     * @return
+     */
+    public int getLeadingZeroBits() {
+        return leadingZeroBits;
+    }
+
+    /**
+     * getter for the maximum of a numeric target.
+     * @return byte[] - 32 byte big endian maximum, null for leading zero bit targets.
+     */
+    byte[] getMaximum() {
+        return maximum == null ? null : maximum.clone();
+    }
+
+    /**
+     * What a block header commits to beyond its difficulty, so the target cannot be
+     * weakened without changing the hash: nothing for a whole number of hex digits
+     * (the difficulty says it all), "/bits" for other leading zero bit targets and
+     * "/maximum" in hex for numeric targets.
+     * @return String - suffix hashed after the difficulty.
+     */
+    String headerSuffix() {
+        if (maximum != null) {
+            return "/" + BlockHasher.toHex(maximum);
+        }
+        return leadingZeroBits % 4 == 0 ? "" : "/" + leadingZeroBits;
+    }
+
+    /**
+     * Number of whole leading zero hex digits every good hash has, this is the
+     * difficulty a block header commits to.
+     * @return int - leading zero hex digits.
+     */
+    public int getHexDigits() {
+        return leadingZeroBits / 4;
+    }
+
+    /**
+     * Average number of hashes needed to meet this target.
+     * @return double - expected attempts.
+     */
+    public double getExpectedAttempts() {
+        if (maximum == null) {
+            return Math.pow(2, leadingZeroBits);
+        }
+        BigInteger acceptable = new BigInteger(1, maximum).add(BigInteger.ONE);
+        return HASH_SPACE.doubleValue() / acceptable.doubleValue();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Target)) {
+            return false;
+        }
+        Target that = (Target) other;
+        return leadingZeroBits == that.leadingZeroBits && Arrays.equals(maximum, that.maximum);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * leadingZeroBits + Arrays.hashCode(maximum);
+    }
+
+    /**
+     * Returns a readable form of the target.
+     * @return String - the target.
+     */
+    @Override
+    public String toString() {
+        if (maximum == null) {
+            return leadingZeroBits + " leading zero bits";
+        }
+        return "<= 0x" + BlockHasher.toHex(maximum);
+    }
+}
@@ -0,0 +1,118 @@
+package com.soham;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * This class checks that {@link BlockCodec} gives back the block it was given: every
+ * field, and above all the hash, survives an encode and decode, including null data,
+ * a nonce too big for a long, a numeric target, a batched block and data that is not
+ * valid UTF-16. There is no test framework on the class path, run it with
+ *
+ *     javac -cp "libs/*" -d out src/com/soham/*.java test/com/soham/*.java
+ *     java -cp "out:libs/*" com.soham.BlockCodecTest
+ *
+ * from the BlockChainLedger directory, it exits with an AssertionError on failure.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class BlockCodecTest {
+
+    public static void main(String[] args) {
+        minedBlockRoundTrips();
+        nullDataRoundTrips();
+        bigNonceRoundTrips();
+        numericTargetRoundTrips();
+        batchedBlockRoundTrips();
+        loneSurrogateRoundTripsToTheHashedBytes();
+        System.out.println("BlockCodecTest passed");
+    }
+
+    private static void minedBlockRoundTrips() {
+        Block block = new Block(7, timestamp(), "payment 7", 1);
+        block.setPreviousHash("00" + "ab".repeat(BlockHasher.HASH_LENGTH - 1));
+        block.proofOfWork();
+        checkRoundTrip(block);
+    }
+
+    private static void nullDataRoundTrips() {
+        Block block = new Block(1, timestamp(), (String) null, 1);
+        block.setPreviousHash("");
+        Block decoded = checkRoundTrip(block);
+        check(decoded.getData() == null, "Null data came back as " + decoded.getData());
+    }
+
+    private static void bigNonceRoundTrips() {
+        Block block = new Block(2, timestamp(), "big nonce", 0);
+        block.setPreviousHash("not a hash");
+        block.setNonce(BigInteger.valueOf(Long.MAX_VALUE).multiply(BigInteger.TEN));
+        check(!block.hasLongNonce(), "The nonce should not fit in a long");
+        checkRoundTrip(block);
+    }
+
+    private static void numericTargetRoundTrips() {
+        Block block = new Block(3, timestamp(), "numeric target", 1);
+        block.setPreviousHash("");
+        block.setTarget(Target.ofExpectedAttempts(5));
+        block.proofOfWork();
+        checkRoundTrip(block);
+    }
+
+    private static void batchedBlockRoundTrips() {
+        Block block = new Block(4, timestamp(), Arrays.asList("a", "b", "c"), 1);
+        block.setPreviousHash("");
+        block.proofOfWork();
+        Block decoded = checkRoundTrip(block);
+        check(decoded.hasValidMerkleRoot(), "The batched block lost its Merkle root");
+    }
+
+    private static void loneSurrogateRoundTripsToTheHashedBytes() {
+        Block block = new Block(5, timestamp(), "bad \ud800 data \udc00", 1);
+        block.setPreviousHash("");
+        block.proofOfWork();
+        ByteBuffer encoded = BlockCodec.encode(block);
+        Block decoded = BlockCodec.decode(encoded);
+        check(decoded.getData().equals("bad ? data ?"), "Lone surrogates came back as " + decoded.getData());
+        check(decoded.calculateHash().equals(block.calculateHash()), "A lone surrogate changed the hash");
+    }
+
+    /**
+     * Encodes and decodes a block and checks every field and the hash.
+     */
+    private static Block checkRoundTrip(Block block) {
+        ByteBuffer encoded = BlockCodec.encode(block);
+        check(encoded.remaining() == BlockCodec.encodedLength(block), "encodedLength is not the encoded length");
+        check(BlockCodec.peekHash(encoded).equals(block.calculateHash()), "The recorded hash is not the block's");
+        Block decoded = BlockCodec.decode(encoded);
+        check(!encoded.hasRemaining(), "The decoder left bytes behind");
+        check(decoded.getIndex() == block.getIndex(), "index");
+        check(decoded.getTimestamp().equals(block.getTimestamp()), "time stamp");
+        check(Objects.equals(decoded.getData(), block.getData()), "data");
+        check(Objects.equals(decoded.getTransactions(), block.getTransactions()), "transactions");
+        check(decoded.getDifficulty() == block.getDifficulty(), "difficulty");
+        check(decoded.getTarget().equals(block.getTarget()), "target");
+        check(decoded.getNonce().equals(block.getNonce()), "nonce");
+        check(decoded.getPreviousHash().equals(block.getPreviousHash()), "previous hash");
+        check(decoded.calculateHash().equals(block.calculateHash()), "The decoded block has another hash");
+        return decoded;
+    }
+
+    /**
+     * A time stamp with nanoseconds below the millisecond, which the codec keeps too.
+     */
+    private static Timestamp timestamp() {
+        Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+        timestamp.setNanos(timestamp.getNanos() + 123_456);
+        return timestamp;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
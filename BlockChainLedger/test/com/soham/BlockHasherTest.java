@@ -0,0 +1,93 @@
+package com.soham;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+
+/**
+ * This class checks that {@link BlockHasher} hashes the same bytes as the original
+ * concatenation of index, time stamp, data, previous hash, nonce and difficulty, for
+ * null and non-ASCII data, for nonces past Long.MAX_VALUE, and after the nonce digits
+ * are stepped in place across a carry. There is no test framework on the class path,
+ * run it with
+ *
+ *     javac -cp "libs/*" -d out src/com/soham/*.java test/com/soham/*.java
+ *     java -cp "out:libs/*" com.soham.BlockHasherTest
+ *
+ * from the BlockChainLedger directory, it exits with an AssertionError on failure.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class BlockHasherTest {
+
+    public static void main(String[] args) throws NoSuchAlgorithmException {
+        checkSameHash(block("payment 1"), "plain data");
+        checkSameHash(block(null), "null data");
+        checkSameHash(block("caf\u00e9 \u20ac \ud83d\ude00"), "non-ASCII data");
+        Block big = block("big nonce");
+        big.setNonce(BigInteger.valueOf(Long.MAX_VALUE).multiply(BigInteger.valueOf(1000)).add(BigInteger.ONE));
+        checkSameHash(big, "BigInteger nonce");
+        nonceStepsMatchTheConcatenation();
+        minedHashMatchesTheConcatenation();
+        System.out.println("BlockHasherTest passed");
+    }
+
+    private static void nonceStepsMatchTheConcatenation() throws NoSuchAlgorithmException {
+        Block block = block("steps");
+        BlockHasher hasher = new BlockHasher(block);
+        // 999 + 1 grows the digits, Long.MAX_VALUE - 1 + 5 leaves the long range.
+        long[][] steps = {{999, 1}, {Long.MAX_VALUE - 1, 5}, {0, 7}};
+        for (long[] step : steps) {
+            hasher.setNonce(step[0]);
+            hasher.addToNonce((int) step[1]);
+            BigInteger expected = BigInteger.valueOf(step[0]).add(BigInteger.valueOf(step[1]));
+            check(hasher.getNonce().equals(expected), "The nonce stepped to " + hasher.getNonce());
+            block.setNonce(expected);
+            check(hasher.digestHex().equals(concatenationHash(block)),
+                    "A stepped nonce hashes differently from " + expected);
+        }
+    }
+
+    private static void minedHashMatchesTheConcatenation() throws NoSuchAlgorithmException {
+        Block block = block("mined");
+        String mined = block.proofOfWork();
+        check(mined.equals(concatenationHash(block)), "The mined hash is not the concatenation's");
+        check(mined.startsWith("00"), "The mined hash does not meet difficulty 2");
+    }
+
+    private static void checkSameHash(Block block, String what) throws NoSuchAlgorithmException {
+        String expected = concatenationHash(block);
+        check(block.calculateHash().equals(expected), "calculateHash differs for " + what);
+        check(new BlockHasher(block).digestHex().equals(expected), "BlockHasher differs for " + what);
+    }
+
+    /**
+     * The hash the original Block.calculateHash computed, a StringJoiner over the fields.
+     */
+    private static String concatenationHash(Block block) throws NoSuchAlgorithmException {
+        String concatenation = Integer.toString(block.getIndex()) + block.getTimestamp()
+                + block.getData() + block.getPreviousHash() + block.getNonce() + block.getDifficulty();
+        byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(concatenation.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static Block block(String data) {
+        Block block = new Block(3, new Timestamp(1_600_000_000_123L), data, 2);
+        block.setPreviousHash("00a1b2c3");
+        return block;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.soham;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+/**
+ * This class checks checkpoints: a signed checkpoint verifies only with its key,
+ * {@link BlockChain#checkpointEvery(int, java.security.PrivateKey)} signs the block that
+ * completed the interval even when the chain has grown again, counts the checkpoints it
+ * could not sign, seals the checkpoint block and prunes those before it, and a store
+ * reopened with the trusted key starts validating after the checkpoint. There is no
+ * test framework on the class path, run it with
+ *
+ *     javac -cp "libs/*" -d out src/com/soham/*.java test/com/soham/*.java
+ *     java -cp "out:libs/*" com.soham.CheckpointTest
+ *
+ * from the BlockChainLedger directory, it exits with an AssertionError on failure.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class CheckpointTest {
+
+    // blocks between checkpoints.
+    private static final int INTERVAL = 5;
+
+    public static void main(String[] args) throws GeneralSecurityException, IOException {
+        KeyPair keys = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        KeyPair other = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        signatureVerifiesOnlyWithItsKey(keys, other);
+        checkpointPrunesAndSeals(keys);
+        checkpointSignsTheBlockThatCompletedTheInterval(keys);
+        invalidChainIsCountedNotSigned(keys);
+        reopenedStoreStartsAfterTheCheckpoint(keys, other);
+        System.out.println("CheckpointTest passed");
+    }
+
+    private static void signatureVerifiesOnlyWithItsKey(KeyPair keys, KeyPair other) {
+        Checkpoint checkpoint = Checkpoint.sign(7, "00ab", keys.getPrivate());
+        check(checkpoint.verify(keys.getPublic()), "A checkpoint does not verify with its key");
+        check(!checkpoint.verify(other.getPublic()), "A checkpoint verifies with another key");
+    }
+
+    private static void checkpointPrunesAndSeals(KeyPair keys) {
+        BlockChain chain = new BlockChain();
+        chain.checkpointEvery(INTERVAL, keys.getPrivate());
+        fill(chain, 2 * INTERVAL + 2);
+        Checkpoint checkpoint = chain.getCheckpoint();
+        int position = 2 * INTERVAL - 1;
+        check(checkpoint != null && checkpoint.getIndex() == position, "The checkpoint is at " + checkpoint);
+        check(checkpoint.getHash().equals(chain.getBlock(position).getHash()), "The checkpoint signs another hash");
+        check(chain.getBlock(1).isPruned() && chain.getBlock(1).getData() == null, "Block 1 kept its payload");
+        check(!chain.getBlock(position + 1).isPruned(), "A block after the checkpoint was pruned");
+        try {
+            chain.getBlock(position).setData("changed");
+            throw new AssertionError("The checkpoint block can still be changed");
+        } catch (IllegalStateException e) {
+            // sealed.
+        }
+        check(chain.isChainValid() && chain.getVerifiedUpTo() == chain.getChainSize() - 1,
+                "The checkpointed chain is not valid");
+        check(chain.getCheckpointFailures() == 0, chain.getCheckpointFailures() + " checkpoints failed");
+    }
+
+    private static void checkpointSignsTheBlockThatCompletedTheInterval(KeyPair keys) {
+        BlockChain chain = new BlockChain();
+        int position = INTERVAL - 1;
+        // a listener told before the checkpoint one adds another block first.
+        chain.addBlockListener(block -> {
+            if (block.getIndex() == position) {
+                chain.addBlock(new Block(0, chain.getTime(), "late", 1));
+            }
+        });
+        chain.checkpointEvery(INTERVAL, keys.getPrivate());
+        fill(chain, INTERVAL);
+        check(chain.getChainSize() == INTERVAL + 1, "The chain has " + chain.getChainSize() + " blocks");
+        Checkpoint checkpoint = chain.getCheckpoint();
+        check(checkpoint != null && checkpoint.getIndex() == position, "The checkpoint is at " + checkpoint);
+        check(checkpoint.getHash().equals(chain.getBlock(position).getHash()), "The checkpoint signs another hash");
+        check(!chain.getBlock(position + 1).isPruned(), "The block after the checkpoint was pruned");
+        check(chain.getLatestBlock() == chain.getBlock(position + 1), "The checkpoint moved the tip");
+        check(chain.isChainValid(), "The chain is not valid");
+    }
+
+    private static void invalidChainIsCountedNotSigned(KeyPair keys) {
+        BlockChain chain = new BlockChain();
+        chain.checkpointEvery(INTERVAL, keys.getPrivate());
+        fill(chain, 2);
+        chain.getBlock(1).setData("tampered");
+        fill(chain, INTERVAL - 2);
+        check(chain.getChainSize() == INTERVAL, "The block was not added");
+        check(chain.getCheckpoint() == null, "An invalid chain was checkpointed");
+        check(chain.getCheckpointFailures() == 1, chain.getCheckpointFailures() + " checkpoints failed");
+        chain.repairChain();
+        fill(chain, INTERVAL);
+        check(chain.getCheckpoint() != null && chain.getCheckpoint().getIndex() == 2 * INTERVAL - 1,
+                "The next interval was not checkpointed");
+        check(chain.getCheckpointFailures() == 1, chain.getCheckpointFailures() + " checkpoints failed");
+    }
+
+    private static void reopenedStoreStartsAfterTheCheckpoint(KeyPair keys, KeyPair other) throws IOException {
+        Path directory = Files.createTempDirectory("checkpoint");
+        BlockChain chain = BlockChain.open(directory);
+        chain.checkpointEvery(INTERVAL, keys.getPrivate());
+        fill(chain, 3 * INTERVAL + 1);
+        String chainHash = chain.getChainHash();
+        chain.close();
+        int position = 3 * INTERVAL - 1;
+        BlockChain reopened = BlockChain.open(directory, keys.getPublic());
+        try {
+            check(reopened.getCheckpoint().getIndex() == position, "The reopened checkpoint is at "
+                    + reopened.getCheckpoint().getIndex());
+            // the trusted prefix is not validated again.
+            check(reopened.getVerifiedUpTo() == position, "The reopened watermark is at " + reopened.getVerifiedUpTo());
+            check(reopened.getBlock(1).isPruned(), "A block before the checkpoint was read in full");
+            check(reopened.isChainValid() && reopened.getChainHash().equals(chainHash), "The reopened chain differs");
+        } finally {
+            reopened.close();
+        }
+        try {
+            BlockChain.open(directory, other.getPublic()).close();
+            throw new AssertionError("A checkpoint signed with another key was trusted");
+        } catch (IOException e) {
+            // not signed by the trusted key.
+        }
+    }
+
+    private static void fill(BlockChain chain, int count) {
+        for (int i = 0; i < count; i++) {
+            chain.addBlock(new Block(0, chain.getTime(), "payment " + i, 1));
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.soham;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * This class checks the hash and time stamp lookups of {@link BlockChain} around a
+ * tamper: a block changed through its setters is found by neither its old nor its new
+ * hash until the chain is repaired, and after the repair by its new hash, time stamp
+ * and as the child of its parent, also for a block of a reopened store. There is no
+ * test framework on the class path, run it with
+ *
+ *     javac -cp "libs/*" -d out src/com/soham/*.java test/com/soham/*.java
+ *     java -cp "out:libs/*" com.soham.HashLookupTest
+ *
+ * from the BlockChainLedger directory, it exits with an AssertionError on failure.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class HashLookupTest {
+
+    // blocks in the chain, and the one tampered with.
+    private static final int SIZE = 20;
+    private static final int TAMPERED = 7;
+
+    public static void main(String[] args) throws IOException {
+        BlockChain chain = new BlockChain();
+        fill(chain);
+        everyBlockIsFound(chain);
+        tamperedBlockIsFoundAfterRepair(chain);
+        movedTimestampIsFoundAfterRepair(chain);
+        storedBlockIsFoundAfterRepair();
+        System.out.println("HashLookupTest passed");
+    }
+
+    private static void everyBlockIsFound(BlockChain chain) {
+        for (int i = 0; i < chain.getChainSize(); i++) {
+            Block block = chain.getBlock(i);
+            check(chain.getBlockByHash(block.getHash()) == block, "Block " + i + " is not found by its hash");
+            check(chain.getBlockByPreviousHash(block.getPreviousHash()) == block,
+                    "Block " + i + " is not found by its parent's hash");
+        }
+        Block some = chain.getBlock(TAMPERED);
+        check(chain.getBlockByHash(some.getHash().toUpperCase()) == some, "Upper case hashes are not found");
+        check(chain.getBlockByHash("00") == null, "An unknown hash was found");
+        check(chain.getBlockByHash(chain.getChainHash()) == chain.getLatestBlock(), "The chain hash is not the tip");
+    }
+
+    private static void tamperedBlockIsFoundAfterRepair(BlockChain chain) {
+        Block block = chain.getBlock(TAMPERED);
+        String oldHash = block.getHash();
+        block.setData("tampered");
+        check(chain.getBlockByHash(oldHash) == null, "The tampered block is found by its old hash");
+        check(chain.getBlockByHash(block.getHash()) == null, "The tampered block is found before the repair");
+        chain.repairChain();
+        checkFoundAfterRepair(chain, TAMPERED, oldHash);
+    }
+
+    private static void movedTimestampIsFoundAfterRepair(BlockChain chain) {
+        Block block = chain.getBlock(TAMPERED + 1);
+        Timestamp oldTime = block.getTimestamp();
+        Timestamp newTime = new Timestamp(oldTime.getTime() + 3_600_000);
+        String oldHash = block.getHash();
+        block.setTimestamp(newTime);
+        chain.repairChain();
+        checkFoundAfterRepair(chain, TAMPERED + 1, oldHash);
+        Block repaired = chain.getBlock(TAMPERED + 1);
+        List<Block> atNewTime = chain.getBlocksBetween(newTime, new Timestamp(newTime.getTime() + 1));
+        check(atNewTime.size() == 1 && atNewTime.get(0) == repaired, "The block is not found at its new time stamp");
+        check(!chain.getBlocksBetween(oldTime, new Timestamp(oldTime.getTime() + 1)).contains(repaired),
+                "The block is still found at its old time stamp");
+    }
+
+    private static void storedBlockIsFoundAfterRepair() throws IOException {
+        Path directory = Files.createTempDirectory("hash-lookup");
+        BlockChain stored = BlockChain.open(directory);
+        fill(stored);
+        stored.close();
+        BlockChain chain = BlockChain.open(directory);
+        try {
+            everyBlockIsFound(chain);
+            tamperedBlockIsFoundAfterRepair(chain);
+        } finally {
+            chain.close();
+        }
+        BlockChain reopened = BlockChain.open(directory);
+        try {
+            check(reopened.isChainValid(), "The repaired store is not valid");
+            everyBlockIsFound(reopened);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    /**
+     * The repaired block is found by its new hash and as the child of its parent, its
+     * child is found as the child of the new hash, and the old hash finds nothing.
+     */
+    private static void checkFoundAfterRepair(BlockChain chain, int position, String oldHash) {
+        check(chain.isChainValid(), "The repaired chain is not valid");
+        Block repaired = chain.getBlock(position);
+        check(chain.getBlockByHash(oldHash) == null, "The old hash is found after the repair");
+        check(chain.getBlockByHash(repaired.getHash()) == repaired, "The new hash is not found after the repair");
+        check(chain.getBlockByPreviousHash(repaired.getPreviousHash()) == repaired,
+                "The repaired block is not found as the child of its parent");
+        check(chain.getBlockByPreviousHash(repaired.getHash()) == chain.getBlock(position + 1),
+                "The child of the repaired block is not found");
+        check(chain.getBlockByHash(chain.getChainHash()) == chain.getLatestBlock(), "The chain hash is not the tip");
+    }
+
+    private static void fill(BlockChain chain) {
+        for (int i = 0; i < SIZE; i++) {
+            chain.addBlock(new Block(i, chain.getTime(), "payment " + i, 1));
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.soham;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class checks that a node survives hostile frames: a block whose transaction
+ * count or nonce length claims 2^31 entries must cost the sender its connection and
+ * nothing else, and a block mined at a target the sender made easy is dropped.
+ * There is no test framework on the class path, run it with
+ *
+ *     javac -cp "libs/*" -d out src/com/soham/*.java test/com/soham/*.java
+ *     java -cp "out:libs/*" com.soham.LedgerNodeTest
+ *
+ * from the BlockChainLedger directory, it exits with an AssertionError on failure.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class LedgerNodeTest {
+
+    private static final byte ANNOUNCE = 2;
+
+    // how long a check waits for the node.
+    private static final int TIMEOUT_MILLIS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        hostileLengthsAreRejectedByTheCodec();
+        hostileFrameDropsOnlyItsPeer();
+        easyTargetIsDropped();
+        System.out.println("LedgerNodeTest passed");
+    }
+
+    private static void hostileLengthsAreRejectedByTheCodec() {
+        for (byte[] hostile : new byte[][] {hostileTransactionCount(), hostileNonceLength()}) {
+            try {
+                BlockCodec.decode(ByteBuffer.wrap(hostile));
+                throw new AssertionError("A hostile block was decoded");
+            } catch (IllegalArgumentException e) {
+                // rejected before anything was allocated.
+            }
+        }
+    }
+
+    private static void hostileFrameDropsOnlyItsPeer() throws Exception {
+        BlockChain chain = new BlockChain();
+        chain.addBlock(new Block(0, chain.getTime(), "genesis", 1));
+        chain.addBlock(new Block(1, chain.getTime(), "second", 1));
+        try (LedgerNode node = new LedgerNode(chain, new InetSocketAddress("127.0.0.1", 0))) {
+            InetSocketAddress address = node.getLocalAddress();
+            for (byte[] hostile : new byte[][] {hostileTransactionCount(), hostileNonceLength()}) {
+                try (Socket attacker = new Socket(address.getAddress(), address.getPort())) {
+                    attacker.setSoTimeout(TIMEOUT_MILLIS);
+                    attacker.getOutputStream().write(announceFrame(chain.getChainSize(), hostile));
+                    attacker.getOutputStream().flush();
+                    check(closedByPeer(attacker.getInputStream()), "The hostile peer was not disconnected");
+                }
+            }
+            // the node still serves a well behaved peer.
+            BlockChain replica = new BlockChain();
+            try (LedgerNode follower = new LedgerNode(replica, new InetSocketAddress("127.0.0.1", 0))) {
+                follower.connect(address);
+                long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+                while (replica.getChainSize() < chain.getChainSize() && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                check(replica.getChainSize() == chain.getChainSize(), "The node stopped serving after a hostile frame");
+                check(replica.getChainHash().equals(chain.getChainHash()), "The replica does not match");
+            }
+        }
+    }
+
+    private static void easyTargetIsDropped() throws Exception {
+        BlockChain chain = new BlockChain();
+        chain.addBlock(new Block(0, chain.getTime(), "genesis", 1));
+        chain.addBlock(new Block(1, chain.getTime(), "second", 1));
+        try (LedgerNode node = new LedgerNode(chain, new InetSocketAddress("127.0.0.1", 0))) {
+            InetSocketAddress address = node.getLocalAddress();
+            try (Socket sender = new Socket(address.getAddress(), address.getPort())) {
+                // every hash meets a 0 bit target, the block costs its sender nothing.
+                sender.getOutputStream().write(announceFrame(2, minedBlock(chain, "easy", 0)));
+                // announcements are appended in order, the proper block takes the position.
+                sender.getOutputStream().write(announceFrame(2, minedBlock(chain, "proper", 1)));
+                sender.getOutputStream().flush();
+                long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+                while (chain.getChainSize() < 3 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+            }
+            check(chain.getChainSize() == 3, "The proper block was not appended");
+            check(chain.getBlock(2).getData().equals("proper"), "A block with an easy target was appended");
+            check(chain.isChainValid(), "The chain is not valid");
+        }
+    }
+
+    /**
+     * A block at position 2 mined at a difficulty on top of the chain, encoded.
+     */
+    private static byte[] minedBlock(BlockChain chain, String data, int difficulty) {
+        Block block = new Block(2, chain.getTime(), data, difficulty);
+        block.setPreviousHash(chain.getChainHash());
+        block.proofOfWork();
+        ByteBuffer encoded = BlockCodec.encode(block);
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * A block at position 2 whose transaction count claims 2^31 transactions.
+     */
+    private static byte[] hostileTransactionCount() {
+        ByteArrayOutputStream block = blockUpToNonce();
+        // compact nonce 0.
+        block.write(0);
+        block.write(0);
+        previousHashAndNullData(block);
+        // transactions plus one.
+        putVarLong(block, (1L << 31) + 1);
+        return block.toByteArray();
+    }
+
+    /**
+     * A block at position 2 whose big nonce claims 2^31 bytes.
+     */
+    private static byte[] hostileNonceLength() {
+        ByteArrayOutputStream block = blockUpToNonce();
+        // general nonce of 2^31 bytes.
+        block.write(1);
+        putVarLong(block, 1L << 31);
+        return block.toByteArray();
+    }
+
+    private static ByteArrayOutputStream blockUpToNonce() {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        block.write(BlockCodec.VERSION);
+        block.writeBytes(new byte[BlockHasher.HASH_LENGTH]);
+        // zigzag index 2, epoch millis 0, nanos 0, difficulty 0, target bits 0, compact target.
+        putVarLong(block, 4);
+        putVarLong(block, 0);
+        putVarLong(block, 0);
+        putVarLong(block, 0);
+        putVarLong(block, 0);
+        block.write(0);
+        return block;
+    }
+
+    private static void previousHashAndNullData(ByteArrayOutputStream block) {
+        block.write(0);
+        block.writeBytes(new byte[BlockHasher.HASH_LENGTH]);
+        putVarLong(block, 0);
+    }
+
+    private static byte[] announceFrame(int position, byte[] block) throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(frame);
+        out.writeInt(1 + Integer.BYTES + block.length);
+        out.writeByte(ANNOUNCE);
+        out.writeInt(position);
+        out.write(block);
+        return frame.toByteArray();
+    }
+
+    /**
+     * Reads until the node closes the connection.
+     */
+    private static boolean closedByPeer(InputStream in) throws IOException {
+        byte[] buffer = new byte[1024];
+        try {
+            while (in.read(buffer) >= 0) {
+                // the node's STATUS frame.
+            }
+            return true;
+        } catch (SocketTimeoutException e) {
+            return false;
+        } catch (IOException e) {
+            // a reset counts as closed too.
+            return true;
+        }
+    }
+
+    private static void putVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
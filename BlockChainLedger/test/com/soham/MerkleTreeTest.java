@@ -0,0 +1,121 @@
+package com.soham;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class checks {@link MerkleTree} on batches of every size up to 17, above all the
+ * odd ones: the root matches a tree built by splitting at the largest power of two,
+ * which is what carrying the last node of an odd level up comes to, every inclusion
+ * proof verifies and no wrong one does, and repeating the last transaction changes
+ * the root (CVE-2012-2459). There is no test framework on the class path, run it with
+ *
+ *     javac -cp "libs/*" -d out src/com/soham/*.java test/com/soham/*.java
+ *     java -cp "out:libs/*" com.soham.MerkleTreeTest
+ *
+ * from the BlockChainLedger directory, it exits with an AssertionError on failure.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class MerkleTreeTest {
+
+    // largest batch checked.
+    private static final int MAX_COUNT = 17;
+
+    public static void main(String[] args) throws NoSuchAlgorithmException {
+        for (int count = 1; count <= MAX_COUNT; count++) {
+            List<String> transactions = transactions(count);
+            MerkleTree tree = new MerkleTree(transactions);
+            check(tree.getRoot().equals(BlockHasher.toHex(expectedRoot(transactions))),
+                    "The root of " + count + " transactions is wrong");
+            checkProofs(tree, transactions);
+        }
+        singleTransactionIsTheRoot();
+        unpairedNodeHasNoProofEntry();
+        repeatedLastTransactionChangesTheRoot();
+        System.out.println("MerkleTreeTest passed");
+    }
+
+    private static void checkProofs(MerkleTree tree, List<String> transactions) {
+        int count = transactions.size();
+        String root = tree.getRoot();
+        for (int i = 0; i < count; i++) {
+            String transaction = transactions.get(i);
+            List<String> proof = tree.getProof(i);
+            check(MerkleTree.verifyProof(transaction, i, count, proof, root),
+                    "The proof of " + i + " of " + count + " does not verify");
+            check(!MerkleTree.verifyProof(transaction + "x", i, count, proof, root),
+                    "The proof of " + i + " of " + count + " verifies another transaction");
+            if (count > 1) {
+                int other = (i + 1) % count;
+                check(!MerkleTree.verifyProof(transaction, other, count, proof, root),
+                        "The proof of " + i + " of " + count + " verifies at " + other);
+            }
+        }
+    }
+
+    private static void singleTransactionIsTheRoot() throws NoSuchAlgorithmException {
+        MerkleTree tree = new MerkleTree(transactions(1));
+        check(tree.getProof(0).isEmpty(), "A single transaction needs no proof");
+        check(tree.getRoot().equals(BlockHasher.toHex(leaf("tx 0"))), "A single transaction is not the root");
+    }
+
+    private static void unpairedNodeHasNoProofEntry() {
+        // of five, the last is unpaired on the two levels above the leaves.
+        MerkleTree tree = new MerkleTree(transactions(5));
+        check(tree.getProof(4).size() == 1, "The last of five has " + tree.getProof(4).size() + " proof entries");
+        check(tree.getProof(0).size() == 3, "The first of five has " + tree.getProof(0).size() + " proof entries");
+    }
+
+    private static void repeatedLastTransactionChangesTheRoot() {
+        for (int count = 1; count <= MAX_COUNT; count += 2) {
+            List<String> transactions = transactions(count);
+            List<String> repeated = new ArrayList<>(transactions);
+            repeated.add(transactions.get(count - 1));
+            check(!new MerkleTree(transactions).getRoot().equals(new MerkleTree(repeated).getRoot()),
+                    "Repeating the last of " + count + " transactions keeps the root");
+        }
+    }
+
+    /**
+     * The root built top down: the left subtree takes the largest power of two below
+     * the count and the right one the rest, a single transaction is its leaf hash.
+     */
+    private static byte[] expectedRoot(List<String> transactions) throws NoSuchAlgorithmException {
+        int count = transactions.size();
+        if (count == 1) {
+            return leaf(transactions.get(0));
+        }
+        int split = Integer.highestOneBit(count - 1);
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update((byte) 1);
+        digest.update(expectedRoot(transactions.subList(0, split)));
+        digest.update(expectedRoot(transactions.subList(split, count)));
+        return digest.digest();
+    }
+
+    private static byte[] leaf(String transaction) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update((byte) 0);
+        return digest.digest(transaction.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> transactions(int count) {
+        String[] transactions = new String[count];
+        for (int i = 0; i < count; i++) {
+            transactions[i] = "tx " + i;
+        }
+        return Arrays.asList(transactions);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.soham;
+
+/**
+ * This class checks that {@link BlockChain#repairChain()} only mines the blocks that
+ * need it: the blocks before the first invalid one are left as they are, every block
+ * from there on is mined at most once, and a changed block whose hash still meets its
+ * target is only pointed at again, not mined. There is no test framework on the class
+ * path, run it with
+ *
+ *     javac -cp "libs/*" -d out src/com/soham/*.java test/com/soham/*.java
+ *     java -cp "out:libs/*" com.soham.RepairTest
+ *
+ * from the BlockChainLedger directory, it exits with an AssertionError on failure.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class RepairTest {
+
+    // blocks in the chain, and their difficulty.
+    private static final int SIZE = 10;
+    private static final int DIFFICULTY = 2;
+
+    public static void main(String[] args) {
+        validChainIsNotMined();
+        tamperedBlockAndItsChildrenAreMinedOnce();
+        tamperedTipIsTheOnlyBlockMined();
+        blockStillMeetingItsTargetIsNotMined();
+        System.out.println("RepairTest passed");
+    }
+
+    private static void validChainIsNotMined() {
+        BlockChain chain = chain();
+        RepairReport report = chain.repairChain();
+        check(report.getFirstInvalidBlock() == -1, "A valid chain was repaired from " + report.getFirstInvalidBlock());
+        check(report.getBlocksReMined() == 0, "A valid chain had " + report.getBlocksReMined() + " blocks mined");
+    }
+
+    private static void tamperedBlockAndItsChildrenAreMinedOnce() {
+        BlockChain chain = chain();
+        int tampered = 4;
+        Block[] before = blocks(chain);
+        tamper(chain.getBlock(tampered), false);
+        RepairReport report = chain.repairChain();
+        check(report.getFirstInvalidBlock() == tampered, "The repair started at " + report.getFirstInvalidBlock());
+        checkMinedOnlyWhereNeeded(chain, before, report);
+        checkUntouchedBefore(chain, before, tampered);
+        checkRepaired(chain);
+    }
+
+    private static void tamperedTipIsTheOnlyBlockMined() {
+        BlockChain chain = chain();
+        Block[] before = blocks(chain);
+        tamper(chain.getBlock(SIZE - 1), false);
+        RepairReport report = chain.repairChain();
+        check(report.getFirstInvalidBlock() == SIZE - 1, "The repair started at " + report.getFirstInvalidBlock());
+        check(report.getBlocksReMined() == 1, report.getBlocksReMined() + " blocks were mined for the tip");
+        checkUntouchedBefore(chain, before, SIZE - 1);
+        checkRepaired(chain);
+    }
+
+    private static void blockStillMeetingItsTargetIsNotMined() {
+        BlockChain chain = chain();
+        int tampered = 6;
+        Block[] before = blocks(chain);
+        Block block = chain.getBlock(tampered);
+        tamper(block, true);
+        RepairReport report = chain.repairChain();
+        // the change only shows at the child, whose parent hash no longer matches.
+        check(report.getFirstInvalidBlock() == tampered + 1, "The repair started at " + report.getFirstInvalidBlock());
+        checkMinedOnlyWhereNeeded(chain, before, report);
+        check(chain.getBlock(tampered) == block, "The block that still met its target was replaced");
+        checkUntouchedBefore(chain, before, tampered);
+        checkRepaired(chain);
+    }
+
+    /**
+     * Changes the data of a block until its hash does, or does not, still meet its target.
+     */
+    private static void tamper(Block block, boolean stillMeetsTarget) {
+        String data = block.getData();
+        for (int i = 0; ; i++) {
+            block.setData(data + " tampered " + i);
+            if (block.getTarget().isMetBy(block.getHash()) == stillMeetsTarget) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * A block from the first invalid one on needed mining if, pointed at its new parent,
+     * its old nonce no longer met its target. A child can still meet it by chance, so
+     * the expected count is worked out block by block.
+     */
+    private static void checkMinedOnlyWhereNeeded(BlockChain chain, Block[] before, RepairReport report) {
+        int needed = 0;
+        for (int i = report.getFirstInvalidBlock(); i < before.length; i++) {
+            Block withOldNonce = chain.getBlock(i).copy();
+            withOldNonce.setNonce(before[i].getNonce());
+            if (!withOldNonce.getTarget().isMetBy(withOldNonce.getHash())) {
+                needed++;
+            }
+        }
+        check(report.getBlocksReMined() == needed,
+                report.getBlocksReMined() + " blocks were mined where " + needed + " needed it");
+    }
+
+    private static void checkUntouchedBefore(BlockChain chain, Block[] before, int position) {
+        for (int i = 0; i < position; i++) {
+            check(chain.getBlock(i) == before[i], "Block " + i + " before the repair was replaced");
+        }
+    }
+
+    private static void checkRepaired(BlockChain chain) {
+        check(chain.isChainValid(), "The repaired chain is not valid");
+        RepairReport again = chain.repairChain();
+        check(again.getFirstInvalidBlock() == -1 && again.getBlocksReMined() == 0, "A second repair did " + again);
+    }
+
+    private static Block[] blocks(BlockChain chain) {
+        Block[] blocks = new Block[chain.getChainSize()];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = chain.getBlock(i);
+        }
+        return blocks;
+    }
+
+    private static BlockChain chain() {
+        BlockChain chain = new BlockChain();
+        for (int i = 0; i < SIZE; i++) {
+            chain.addBlock(new Block(i, chain.getTime(), "payment " + i, DIFFICULTY));
+        }
+        return chain;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.soham;
+
+import java.sql.Timestamp;
+import java.util.function.Consumer;
+
+/**
+ * This class checks the verified watermark: a validation moves it to the end of the
+ * valid prefix, every setter of a block on the chain moves it back before that block,
+ * and the next validation then finds the changed block. There is no test framework on
+ * the class path, run it with
+ *
+ *     javac -cp "libs/*" -d out src/com/soham/*.java test/com/soham/*.java
+ *     java -cp "out:libs/*" com.soham.WatermarkTest
+ *
+ * from the BlockChainLedger directory, it exits with an AssertionError on failure.
+ *
+ * author soham chakraborti
+ * andrewId: sohamc
+ */
+public class WatermarkTest {
+
+    // blocks in the chain, and the one the setters change.
+    private static final int SIZE = 10;
+    private static final int CHANGED = 4;
+
+    public static void main(String[] args) {
+        validationMovesTheWatermark();
+        checkSetter("setData", block -> block.setData("changed"));
+        checkSetter("setTimestamp", block -> block.setTimestamp(new Timestamp(0)));
+        checkSetter("setPreviousHash", block -> block.setPreviousHash("changed"));
+        checkSetter("setIndex", block -> block.setIndex(CHANGED + 100));
+        checkSetter("setDifficulty", block -> block.setDifficulty(block.getDifficulty() + 1));
+        checkSetter("setNonce", block -> block.setNonce(block.getLongNonce() + 1));
+        System.out.println("WatermarkTest passed");
+    }
+
+    private static void validationMovesTheWatermark() {
+        BlockChain chain = chain();
+        check(chain.getVerifiedUpTo() == -1, "Nothing should be verified before a validation");
+        check(chain.isChainValid(), "The chain is not valid");
+        check(chain.getVerifiedUpTo() == SIZE - 1, "The watermark is at " + chain.getVerifiedUpTo());
+    }
+
+    /**
+     * Changes a validated block through a setter, the change must not hide behind the watermark.
+     */
+    private static void checkSetter(String setter, Consumer<Block> change) {
+        BlockChain chain = chain();
+        check(chain.isChainValid(), "The chain is not valid");
+        change.accept(chain.getBlock(CHANGED));
+        check(chain.getVerifiedUpTo() == CHANGED - 1,
+                setter + " left the watermark at " + chain.getVerifiedUpTo());
+        int firstInvalid = chain.findFirstInvalidBlock();
+        // a block whose hash still meets its target is only caught at its child.
+        check(firstInvalid == CHANGED || firstInvalid == CHANGED + 1,
+                setter + " was not found, first invalid block " + firstInvalid);
+        check(chain.getVerifiedUpTo() == firstInvalid - 1,
+                setter + " moved the watermark to " + chain.getVerifiedUpTo());
+        chain.repairChain();
+        check(chain.isChainValid() && chain.getVerifiedUpTo() == SIZE - 1, setter + " was not repaired");
+    }
+
+    private static BlockChain chain() {
+        BlockChain chain = new BlockChain();
+        for (int i = 0; i < SIZE; i++) {
+            chain.addBlock(new Block(i, chain.getTime(), "payment " + i, 1));
+        }
+        return chain;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}